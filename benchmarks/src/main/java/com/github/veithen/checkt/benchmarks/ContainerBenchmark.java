@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.benchmarks;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.RetentionPolicy;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.Month;
+import java.time.temporal.ChronoField;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the generated {@code EnumTranslators} container with {@link HashMap}, {@link
+ * IdentityHashMap} and {@link ClassValue}. Each invocation looks up or stores the next key of a
+ * fixed set of enum classes, so that lookups are not trivially predictable.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContainerBenchmark {
+    private static final Class<?>[] KEYS = {
+        DayOfWeek.class,
+        Month.class,
+        ChronoUnit.class,
+        ChronoField.class,
+        TimeUnit.class,
+        RoundingMode.class,
+        ElementType.class,
+        RetentionPolicy.class,
+    };
+
+    private Class<? extends Enum<?>>[] keys;
+    private Function<String, ?>[] values;
+    private int index;
+    private EnumTranslators container;
+    private Map<Class<?>, Function<String, ?>> hashMap;
+    private Map<Class<?>, Function<String, ?>> identityHashMap;
+    private ClassValue<Function<String, ?>> classValue;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        keys = (Class<? extends Enum<?>>[]) new Class<?>[KEYS.length];
+        values = (Function<String, ?>[]) new Function<?, ?>[KEYS.length];
+        container = new EnumTranslators();
+        hashMap = new HashMap<>();
+        identityHashMap = new IdentityHashMap<>();
+        for (int i = 0; i < KEYS.length; i++) {
+            keys[i] = (Class<? extends Enum<?>>) KEYS[i];
+            values[i] = addTranslator(keys[i]);
+        }
+        Map<Class<?>, Function<String, ?>> classValueMap = new HashMap<>(hashMap);
+        classValue =
+                new ClassValue<Function<String, ?>>() {
+                    @Override
+                    protected Function<String, ?> computeValue(Class<?> type) {
+                        return classValueMap.get(type);
+                    }
+                };
+    }
+
+    private <T extends Enum<?>> Function<String, T> addTranslator(Class<T> type) {
+        Function<String, T> translator =
+                s -> {
+                    for (T constant : type.getEnumConstants()) {
+                        if (constant.name().equals(s)) {
+                            return constant;
+                        }
+                    }
+                    throw new IllegalArgumentException(s);
+                };
+        container.put(type, translator);
+        hashMap.put(type, translator);
+        identityHashMap.put(type, translator);
+        return translator;
+    }
+
+    private int next() {
+        return index = (index + 1) & (KEYS.length - 1);
+    }
+
+    @Benchmark
+    public Function<String, ?> containerGet() {
+        return container.get(keys[next()]);
+    }
+
+    @Benchmark
+    public Function<String, ?> hashMapGet() {
+        return hashMap.get(keys[next()]);
+    }
+
+    @Benchmark
+    public Function<String, ?> identityHashMapGet() {
+        return identityHashMap.get(keys[next()]);
+    }
+
+    @Benchmark
+    public Function<String, ?> classValueGet() {
+        return classValue.get(keys[next()]);
+    }
+
+    @Benchmark
+    public Function<String, ?> containerPut() {
+        int i = next();
+        return put(keys[i], values[i]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Enum<?>> Function<String, T> put(Class<T> key, Function<String, ?> value) {
+        return container.put(key, (Function<String, T>) value);
+    }
+
+    @Benchmark
+    public Function<String, ?> hashMapPut() {
+        int i = next();
+        return hashMap.put(keys[i], values[i]);
+    }
+
+    @Benchmark
+    public Function<String, ?> identityHashMapPut() {
+        int i = next();
+        return identityHashMap.put(keys[i], values[i]);
+    }
+}
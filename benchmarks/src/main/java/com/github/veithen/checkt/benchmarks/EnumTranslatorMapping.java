@@ -0,0 +1,35 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.benchmarks;
+
+import java.util.AbstractMap;
+import java.util.function.Function;
+
+import com.github.veithen.checkt.annotation.Container;
+
+@Container("EnumTranslators")
+public class EnumTranslatorMapping<T extends Enum<?>>
+        extends AbstractMap.SimpleEntry<Class<T>, Function<String, T>> {
+    private static final long serialVersionUID = 1L;
+
+    public EnumTranslatorMapping(Class<T> key, Function<String, T> value) {
+        super(key, value);
+    }
+}
@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares lookups in an equality-keyed container using keys that are equal to, but not the same
+ * as, the stored keys with lookups in an identity-keyed container using the stored keys, and with
+ * {@link HashMap}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EqualityContainerBenchmark {
+    private static final int KEYS = 8;
+
+    private Property<?>[] keys;
+    private Property<?>[] copies;
+    private int index;
+    private IdentityPropertyValues identityContainer;
+    private EqualityPropertyValues equalityContainer;
+    private Map<Property<?>, Object> hashMap;
+
+    @Setup
+    public void setUp() {
+        keys = new Property<?>[KEYS];
+        copies = new Property<?>[KEYS];
+        identityContainer = new IdentityPropertyValues();
+        equalityContainer = new EqualityPropertyValues();
+        hashMap = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            Property<Integer> key = new Property<>("property" + i, Integer.class);
+            keys[i] = key;
+            copies[i] = new Property<>("property" + i, Integer.class);
+            identityContainer.put(key, i);
+            equalityContainer.put(key, i);
+            hashMap.put(key, i);
+        }
+    }
+
+    private int next() {
+        return index = (index + 1) & (KEYS - 1);
+    }
+
+    @Benchmark
+    public Object identityContainerGet() {
+        return identityContainer.get(keys[next()]);
+    }
+
+    @Benchmark
+    public Object equalityContainerGet() {
+        return equalityContainer.get(copies[next()]);
+    }
+
+    @Benchmark
+    public Object hashMapGet() {
+        return hashMap.get(copies[next()]);
+    }
+}
@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares the methods in the generated {@code SafeCast} class with unchecked casts. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SafeCastBenchmark {
+    // Non final fields so that the JIT can't constant fold the casts.
+    private Relation<?, ?> relation = new Relation<>(String.class, Integer.class);
+    private SomeClass<?, Integer> someClass = new SomeClass<>(String.class);
+    private Class<String> stringType = String.class;
+    private Class<Integer> integerType = Integer.class;
+    private List<Relation<?, ?>> relations =
+            Collections.nCopies(16, new Relation<>(String.class, Integer.class));
+
+    @Benchmark
+    public Relation<String, Integer> cast() {
+        return SafeCast.cast(relation, stringType, integerType);
+    }
+
+    @Benchmark
+    public Relation<String, ?> castByType1() {
+        return SafeCast.castByType1(relation, stringType);
+    }
+
+    @Benchmark
+    public SomeClass<String, Integer> castSomeClass() {
+        return SafeCast.cast(someClass, stringType);
+    }
+
+    @Benchmark
+    public List<Relation<String, ?>> streamWithLambda() {
+        return relations.stream()
+                .map(r -> SafeCast.castByType1(r, stringType))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Relation<String, ?>> streamWithCaster() {
+        return relations.stream()
+                .map(SafeCast.relationCasterByType1(stringType))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Relation<String, Integer> uncheckedCast() {
+        return (Relation<String, Integer>) relation;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Relation<String, ?> uncheckedCastByType1() {
+        return (Relation<String, ?>) relation;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public SomeClass<String, Integer> uncheckedCastSomeClass() {
+        return (SomeClass<String, Integer>) someClass;
+    }
+}
@@ -0,0 +1,56 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+/**
+ * Determines when the {@code cast} methods in the generated {@code SafeCast} classes check the
+ * tokens. If the checks are conditional, the condition is stored in a {@code static final} field
+ * so that the JIT compiler can eliminate the checks when they are disabled.
+ */
+enum CheckPolicy {
+    /** The checks are always performed. */
+    ALWAYS,
+
+    /** The checks are performed if assertions are enabled for the {@code SafeCast} class. */
+    ASSERT,
+
+    /**
+     * The checks are performed unless the {@value #SYSTEM_PROPERTY} system property is set to
+     * {@code false} when the {@code SafeCast} class is initialized.
+     */
+    GUARDED;
+
+    static final String SYSTEM_PROPERTY = "checkt.checks";
+
+    /**
+     * Returns the policy for a value of the {@code checkt.checks} processor option.
+     *
+     * @param value the value of the option
+     * @return the policy, or {@code null} if the value is not supported
+     */
+    static CheckPolicy forOptionValue(String value) {
+        for (CheckPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(value)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
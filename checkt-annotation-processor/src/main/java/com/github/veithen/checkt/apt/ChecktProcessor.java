@@ -20,12 +20,18 @@
 package com.github.veithen.checkt.apt;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -34,20 +40,23 @@ import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.Processor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ExecutableElement;
-import javax.lang.model.element.Modifier;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.TypeParameterElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.type.TypeVariable;
+import javax.lang.model.util.Types;
 import javax.tools.Diagnostic.Kind;
+import javax.tools.StandardLocation;
 
 import com.google.auto.service.AutoService;
 
@@ -58,25 +67,189 @@ public class ChecktProcessor extends AbstractProcessor {
     private static final String CONTAINER_ANNOTATION_NAME =
             "com.github.veithen.checkt.annotation.Container";
 
+    /** The boolean attributes of {@code @Container} that select a container mode. */
+    private static final String[] CONTAINER_MODES = {
+        "concurrent", "frozen", "weakKeys", "multiValued", "equality", "hierarchical", "scoped"
+    };
+
+    /**
+     * Pairs of container modes that can't be combined, with the error reported for them. In
+     * addition to {@link #CONTAINER_MODES}, {@code bounded} stands for a positive maximumSize.
+     */
+    private static final String[][] INCOMPATIBLE_CONTAINER_MODES = {
+        {"bounded", "weakKeys", "Bounded containers can't have weak keys"},
+        {"bounded", "multiValued", "Bounded containers can't be multi-valued"},
+        {"bounded", "equality", "Bounded containers can't be equality-keyed"},
+        {"weakKeys", "equality", "Containers with weak keys can't be equality-keyed"},
+        {"frozen", "concurrent", "Frozen containers are immutable and can't be concurrent"},
+        {"frozen", "weakKeys", "Frozen containers can't have weak keys"},
+        {"frozen", "bounded", "Frozen containers can't be bounded"},
+        {"frozen", "multiValued", "Frozen containers can't be multi-valued"},
+        {"frozen", "equality", "Frozen containers can't be equality-keyed"},
+        {"scoped", "concurrent", "Scoped containers are immutable and can't be concurrent"},
+        {"scoped", "frozen", "Scoped containers can't be frozen"},
+        {"scoped", "weakKeys", "Scoped containers can't have weak keys"},
+        {"scoped", "bounded", "Scoped containers can't be bounded"},
+        {"scoped", "multiValued", "Scoped containers can't be multi-valued"},
+        {"scoped", "equality", "Scoped containers can't be equality-keyed"},
+        {"scoped", "hierarchical", "Scoped containers can't be hierarchical"},
+        {"hierarchical", "frozen", "Frozen containers can't be hierarchical"},
+        {"hierarchical", "bounded", "Bounded containers can't be hierarchical"},
+        {"hierarchical", "multiValued", "Multi-valued containers can't be hierarchical"},
+    };
+
+    /**
+     * Processor option that enables the collection of statistics. The value is the path of the
+     * JSON file to which the statistics are written.
+     */
+    private static final String STATS_OPTION = "checkt.stats";
+
+    /**
+     * Processor option that selects how the {@code SafeCast} classes are emitted: {@code source}
+     * (the default) generates source files, {@code classfile} generates class files so that javac
+     * doesn't need to parse and compile them. The {@code classfile} backend only covers {@code
+     * SafeCast} classes: it doesn't generate containers and reports an error for every class
+     * annotated with {@code Container}.
+     */
+    private static final String BACKEND_OPTION = "checkt.backend";
+
+    /**
+     * Processor option that enables counters in the generated code: successes and failures of the
+     * {@code cast} and {@code isCastable} methods in {@code SafeCast}, and hits and misses of
+     * container lookups. The counters are exposed by the generated {@code metrics()} methods.
+     * Only supported by the source backend.
+     */
+    private static final String METRICS_OPTION = "checkt.metrics";
+
+    /**
+     * Processor option that selects when the {@code cast} methods in {@code SafeCast} check the
+     * tokens: {@code always} (the default), {@code assert} or {@code guarded}. See {@link
+     * CheckPolicy}.
+     */
+    private static final String CHECKS_OPTION = "checkt.checks";
+
+    /**
+     * Processor option that moves the methods and the state for each type in {@code SafeCast} to a
+     * nested holder class, so that they are only loaded and initialized when they are first used.
+     * The methods in {@code SafeCast} itself only delegate to the holder. Only supported by the
+     * source backend.
+     */
+    private static final String SPLIT_OPTION = "checkt.split";
+
+    /**
+     * The packages for which a {@code SafeCast} class has been generated in a previous round. A
+     * file can only be created once, so new {@code TypeToken} methods in these packages
+     * can't be taken into account.
+     */
+    private final Set<String> safeCastPackages = new HashSet<>();
+
+    private final RegistryIndex index = new RegistryIndex();
+    private final Set<Element> indexedElements = new LinkedHashSet<>();
+
+    private boolean classFileBackend;
+    private boolean metrics;
+    private CheckPolicy checkPolicy = CheckPolicy.ALWAYS;
+    private boolean split;
+    private String statsFile;
+    private ProcessorStats stats;
+    private ProcessorStats.Round round;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        String backend = processingEnv.getOptions().get(BACKEND_OPTION);
+        if (backend == null || backend.equals("source")) {
+            classFileBackend = false;
+        } else if (backend.equals("classfile")) {
+            classFileBackend = true;
+        } else {
+            processingEnv
+                    .getMessager()
+                    .printMessage(
+                            Kind.ERROR, "Unsupported value for " + BACKEND_OPTION + ": " + backend);
+        }
+        Map<String, String> options = processingEnv.getOptions();
+        metrics =
+                options.containsKey(METRICS_OPTION)
+                        && !"false".equals(options.get(METRICS_OPTION));
+        if (metrics && classFileBackend) {
+            processingEnv
+                    .getMessager()
+                    .printMessage(
+                            Kind.ERROR,
+                            METRICS_OPTION + " is not supported by the classfile backend");
+        }
+        split = options.containsKey(SPLIT_OPTION) && !"false".equals(options.get(SPLIT_OPTION));
+        if (split && classFileBackend) {
+            processingEnv
+                    .getMessager()
+                    .printMessage(
+                            Kind.ERROR,
+                            SPLIT_OPTION + " is not supported by the classfile backend");
+        }
+        String checks = options.get(CHECKS_OPTION);
+        if (checks != null) {
+            CheckPolicy policy = CheckPolicy.forOptionValue(checks);
+            if (policy == null) {
+                processingEnv
+                        .getMessager()
+                        .printMessage(
+                                Kind.ERROR,
+                                "Unsupported value for " + CHECKS_OPTION + ": " + checks);
+            } else {
+                checkPolicy = policy;
+            }
+        }
+        statsFile = options.get(STATS_OPTION);
+        if (statsFile != null) {
+            stats = new ProcessorStats();
+        }
+    }
+
     private void writeSource(
             CharSequence name,
             Collection<? extends Element> originatingElements,
             SourceProvider sourceProvider) {
-        try (SourceWriter out =
-                new SourceWriter(
-                        processingEnv
-                                .getFiler()
-                                .createSourceFile(
-                                        name,
-                                        originatingElements.toArray(
-                                                new Element[originatingElements.size()]))
-                                .openWriter())) {
-            sourceProvider.writeTo(out);
+        SourceWriter out = new SourceWriter();
+        sourceProvider.writeTo(out);
+        String content = out.toString();
+        if (round != null) {
+            round.addFile(content.getBytes(StandardCharsets.UTF_8).length);
+        }
+        try (Writer writer =
+                processingEnv
+                        .getFiler()
+                        .createSourceFile(
+                                name,
+                                originatingElements.toArray(
+                                        new Element[originatingElements.size()]))
+                        .openWriter()) {
+            writer.write(content);
         } catch (IOException ex) {
             processingEnv.getMessager().printMessage(Kind.ERROR, "Failed to write source file");
         }
     }
 
+    private void writeClasses(
+            Collection<? extends Element> originatingElements, Map<String, byte[]> classes) {
+        Element[] elements = originatingElements.toArray(new Element[originatingElements.size()]);
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            byte[] content = entry.getValue();
+            if (round != null) {
+                round.addFile(content.length);
+            }
+            try (OutputStream out =
+                    processingEnv
+                            .getFiler()
+                            .createClassFile(entry.getKey(), elements)
+                            .openOutputStream()) {
+                out.write(content);
+            } catch (IOException ex) {
+                processingEnv.getMessager().printMessage(Kind.ERROR, "Failed to write class file");
+            }
+        }
+    }
+
     static String formatTypeParameter(TypeParameterElement typeParameter) {
         List<? extends TypeMirror> bounds = typeParameter.getBounds();
         if (bounds.isEmpty()) {
@@ -105,90 +278,43 @@ public class ChecktProcessor extends AbstractProcessor {
         return name;
     }
 
-    private void generateCastMethod(
-            SourceWriter out, TypeElement type, List<ExecutableElement> methods, String name)
-            throws IOException {
+    /**
+     * Creates the model for a method annotated with {@code TypeToken}.
+     *
+     * @return the model, or {@code null} if the method is not a valid type token method (in
+     *     which case an error has been reported)
+     */
+    private TokenModel createTokenModel(ExecutableElement method) {
+        TypeMirror returnType = method.getReturnType();
+        if (!(returnType instanceof DeclaredType)) {
+            processingEnv
+                    .getMessager()
+                    .printMessage(
+                            Kind.ERROR,
+                            "Methods annotated with @TypeToken must return a reference",
+                            method);
+            return null;
+        }
         Set<TypeParameterElement> constrainedTypeParameters = new HashSet<>();
-        for (ExecutableElement method : methods) {
-            TypeMirror returnType = method.getReturnType();
-            if (!(returnType instanceof DeclaredType)) {
-                processingEnv
-                        .getMessager()
-                        .printMessage(
-                                Kind.ERROR,
-                                "Methods annotated with @TypeToken must return a reference",
-                                method);
-                return;
-            }
-            DeclaredType declaredType = (DeclaredType) returnType;
-            boolean valid = false;
-            for (TypeMirror typeArgument : declaredType.getTypeArguments()) {
-                if (typeArgument instanceof TypeVariable) {
-                    constrainedTypeParameters.add(
-                            (TypeParameterElement) ((TypeVariable) typeArgument).asElement());
-                    valid = true;
-                }
-            }
-            if (!valid) {
-                processingEnv
-                        .getMessager()
-                        .printMessage(
-                                Kind.ERROR, "Method does not return a valid type token", method);
-                return;
+        for (TypeMirror typeArgument : ((DeclaredType) returnType).getTypeArguments()) {
+            if (typeArgument instanceof TypeVariable) {
+                constrainedTypeParameters.add(
+                        (TypeParameterElement) ((TypeVariable) typeArgument).asElement());
             }
         }
-        out.println();
-        out.print("    ");
-        if (type.getModifiers().contains(Modifier.PUBLIC)) {
-            out.print("public ");
-        }
-        out.print("static ");
-        out.print(formatTypeParameters(type.getTypeParameters()));
-        out.print(" ");
-        String returnType =
-                type.getSimpleName()
-                        + type.getTypeParameters().stream()
-                                .map(TypeParameterElement::getSimpleName)
-                                .collect(Collectors.joining(",", "<", ">"));
-        out.print(returnType);
-        out.print(" ");
-        out.print(name);
-        out.print("(");
-        out.print(type.getSimpleName());
-        out.print("<");
-        out.print(
-                type.getTypeParameters().stream()
-                        .map(t -> constrainedTypeParameters.contains(t) ? "?" : t.getSimpleName())
-                        .collect(Collectors.joining(",")));
-        out.print("> o");
-        for (ExecutableElement method : methods) {
-            out.print(", ");
-            out.print(method.getReturnType());
-            out.print(" ");
-            out.print(getTokenName(method, true));
-        }
-        out.println(") {");
-        for (ExecutableElement method : methods) {
-            String tokenName = getTokenName(method, true);
-            out.print("        if (");
-            out.print(tokenName);
-            out.print(" == null || o.");
-            out.print(method.getSimpleName());
-            out.print("() != ");
-            out.print(tokenName);
-            out.println(") {");
-            out.println("            throw new ClassCastException();");
-            out.println("        }");
-        }
-        out.print("        return (");
-        out.print(returnType);
-        out.println(")o;");
-        out.println("    }");
+        if (constrainedTypeParameters.isEmpty()) {
+            processingEnv
+                    .getMessager()
+                    .printMessage(Kind.ERROR, "Method does not return a valid type token", method);
+            return null;
+        }
+        return new TokenModel(method, constrainedTypeParameters);
     }
 
-    private void generateSafeCast(TypeElement annotation, RoundEnvironment env) {
-        Map<PackageElement, Map<TypeElement, List<ExecutableElement>>> packageMap = new HashMap<>();
-        for (Element element : env.getElementsAnnotatedWith(annotation)) {
+    private void generateSafeCast(Set<? extends Element> elements) {
+        // Types are sorted by simple name so that the generated code is deterministic.
+        Map<PackageElement, Map<String, TypeModel>> packageMap = new HashMap<>();
+        for (Element element : elements) {
             if (!(element instanceof ExecutableElement)) {
                 processingEnv
                         .getMessager()
@@ -198,140 +324,233 @@ public class ChecktProcessor extends AbstractProcessor {
             ExecutableElement method = (ExecutableElement) element;
             TypeElement type = (TypeElement) method.getEnclosingElement();
             PackageElement pkg = (PackageElement) type.getEnclosingElement();
-            packageMap
-                    .computeIfAbsent(
-                            pkg,
-                            k ->
-                                    new TreeMap<>(
-                                            (o1, o2) ->
-                                                    o1.getSimpleName()
-                                                            .toString()
-                                                            .compareTo(
-                                                                    o2.getSimpleName().toString())))
-                    .computeIfAbsent(type, k -> new ArrayList<>())
-                    .add(method);
-        }
-        for (Map.Entry<PackageElement, Map<TypeElement, List<ExecutableElement>>> packageEntry :
+            TypeModel typeModel =
+                    packageMap
+                            .computeIfAbsent(pkg, k -> new TreeMap<>())
+                            .computeIfAbsent(
+                                    type.getSimpleName().toString(), k -> new TypeModel(type));
+            TokenModel tokenModel = createTokenModel(method);
+            if (tokenModel != null) {
+                typeModel.addToken(tokenModel);
+            }
+            indexedElements.add(type);
+            index.addTypeTokenClass(getBinaryName(type));
+        }
+        for (Map.Entry<PackageElement, Map<String, TypeModel>> packageEntry :
                 packageMap.entrySet()) {
             PackageElement pkg = packageEntry.getKey();
-            writeSource(
-                    pkg.getQualifiedName() + ".SafeCast",
-                    packageEntry.getValue().keySet(),
-                    out -> {
-                        out.print("package ");
-                        out.print(pkg.getQualifiedName());
-                        out.println(";");
-                        out.println();
-                        if (packageEntry.getValue().keySet().stream()
-                                .anyMatch(t -> t.getModifiers().contains(Modifier.PUBLIC))) {
-                            out.print("public ");
-                        }
-                        out.println("final class SafeCast {");
-                        out.println("    private SafeCast() {}");
-                        for (Map.Entry<TypeElement, List<ExecutableElement>> typeEntry :
-                                packageEntry.getValue().entrySet()) {
-                            TypeElement type = typeEntry.getKey();
-                            List<ExecutableElement> methods = typeEntry.getValue();
-                            generateCastMethod(out, type, methods, "cast");
-                            if (methods.size() > 1) {
-                                for (ExecutableElement method : methods) {
-                                    generateCastMethod(
-                                            out,
-                                            type,
-                                            Collections.singletonList(method),
-                                            "castBy" + getTokenName(method, false));
-                                }
-                            }
-                        }
-                        out.println("}");
-                    });
+            Collection<TypeModel> types = packageEntry.getValue().values();
+            if (!safeCastPackages.add(pkg.getQualifiedName().toString())) {
+                for (TypeModel type : types) {
+                    processingEnv
+                            .getMessager()
+                            .printMessage(
+                                    Kind.ERROR,
+                                    "SafeCast has already been generated for this package in a"
+                                            + " previous round",
+                                    type.getElement());
+                }
+                continue;
+            }
+            List<TypeElement> originatingElements =
+                    types.stream().map(TypeModel::getElement).collect(Collectors.toList());
+            String packageName = pkg.getQualifiedName().toString();
+            if (classFileBackend) {
+                writeClasses(
+                        originatingElements,
+                        new SafeCastClassGenerator(
+                                        packageName,
+                                        types,
+                                        processingEnv.getTypeUtils(),
+                                        processingEnv.getElementUtils(),
+                                        checkPolicy)
+                                .generate());
+            } else {
+                writeSource(
+                        packageName + ".SafeCast",
+                        originatingElements,
+                        new SafeCastGenerator(packageName, types, metrics, checkPolicy, split));
+            }
         }
     }
 
+    private boolean isSubtype(TypeMirror type, String className) {
+        Types typeUtils = processingEnv.getTypeUtils();
+        return typeUtils.isAssignable(
+                typeUtils.erasure(type),
+                typeUtils.getDeclaredType(
+                        processingEnv.getElementUtils().getTypeElement(className)));
+    }
+
     private void generateContainer(TypeElement annotation, TypeElement element) {
+        if (classFileBackend) {
+            reportError(element, "Containers are not supported by the classfile backend");
+            return;
+        }
         Map<? extends ExecutableElement, ? extends AnnotationValue> values =
-                element.getAnnotationMirrors().stream()
-                        .filter(a -> a.getAnnotationType().asElement() == annotation)
-                        .findFirst()
-                        .get()
-                        .getElementValues();
-        String className =
-                (String)
-                        values.entrySet().stream()
-                                .filter(e -> e.getKey().getSimpleName().contentEquals("value"))
-                                .findFirst()
-                                .get()
-                                .getValue()
-                                .getValue();
-        String typeParameters = formatTypeParameters(element.getTypeParameters());
-        String commonModifiers = element.getModifiers().contains(Modifier.PUBLIC) ? "public " : "";
-        List<? extends TypeMirror> typeArguments =
-                ((DeclaredType) element.getSuperclass()).getTypeArguments();
-        TypeMirror keyType = typeArguments.get(0);
-        TypeMirror valueType = typeArguments.get(1);
-        PackageElement pkg = (PackageElement) element.getEnclosingElement();
+                processingEnv
+                        .getElementUtils()
+                        .getElementValuesWithDefaults(
+                                element.getAnnotationMirrors().stream()
+                                        .filter(
+                                                a ->
+                                                        a.getAnnotationType().asElement()
+                                                                == annotation)
+                                        .findFirst()
+                                        .get());
+        ContainerModel container = new ContainerModel(processingEnv, element, values);
+        if (container.getExpectedSize() < 0) {
+            reportError(element, "expectedSize must not be negative");
+            return;
+        }
+        if (container.getMaximumSize() < 0) {
+            reportError(element, "maximumSize must not be negative");
+            return;
+        }
+        if (container.getExpectedSize() > ContainerGenerator.MAX_SIZE) {
+            reportError(element, "expectedSize must not exceed " + ContainerGenerator.MAX_SIZE);
+            return;
+        }
+        if (container.getMaximumSize() > ContainerGenerator.MAX_SIZE) {
+            reportError(element, "maximumSize must not exceed " + ContainerGenerator.MAX_SIZE);
+            return;
+        }
+        Set<String> modes = new HashSet<>();
+        for (String mode : CONTAINER_MODES) {
+            if ((Boolean) getAnnotationValue(values, mode)) {
+                modes.add(mode);
+            }
+        }
+        if (container.getMaximumSize() > 0) {
+            modes.add("bounded");
+        }
+        for (String[] incompatibleModes : INCOMPATIBLE_CONTAINER_MODES) {
+            if (modes.contains(incompatibleModes[0]) && modes.contains(incompatibleModes[1])) {
+                reportError(element, incompatibleModes[2]);
+                return;
+            }
+        }
+        if (container.isFrozen() && !isSubtype(element.asType(), "java.util.Map.Entry")) {
+            reportError(element, "Frozen containers require a class that implements Map.Entry");
+            return;
+        }
+        if (container.isHierarchical() && !container.isClassKeyed()) {
+            reportError(
+                    element,
+                    "Hierarchical lookups are only supported for containers keyed by Class");
+            return;
+        }
+        indexedElements.add(element);
+        index.addContainer(getBinaryName(element), container.getQualifiedClassName());
         writeSource(
-                pkg.getQualifiedName() + "." + className,
+                container.getQualifiedClassName(),
                 Collections.singleton(element),
-                out -> {
-                    out.print("package ");
-                    out.print(pkg.getQualifiedName());
-                    out.println(";");
-                    out.println();
-                    out.println("import java.util.Map;");
-                    out.println("import java.util.IdentityHashMap;");
-                    out.println();
-                    out.print(commonModifiers);
-                    out.print("final class ");
-                    out.print(className);
-                    out.println(" {");
-                    out.println("    private final Map map = new IdentityHashMap();");
-                    out.println();
-                    out.print("    ");
-                    out.print(commonModifiers);
-                    out.print(typeParameters);
-                    out.print(" ");
-                    out.print(valueType);
-                    out.print(" put(");
-                    out.print(keyType);
-                    out.print(" key, ");
-                    out.print(valueType);
-                    out.println(" value) {");
-                    out.print("        return (");
-                    out.print(valueType);
-                    out.println(")map.put(key, value);");
-                    out.println("    }");
-                    out.println();
-                    out.print("    ");
-                    out.print(commonModifiers);
-                    out.print(typeParameters);
-                    out.print(" ");
-                    out.print(valueType);
-                    out.print(" get(");
-                    out.print(keyType);
-                    out.println(" key) {");
-                    out.print("        return (");
-                    out.print(valueType);
-                    out.println(")map.get(key);");
-                    out.println("    }");
-                    out.println("}");
-                });
+                new ContainerGenerator(container, metrics));
+    }
+
+    private void reportError(Element element, String message) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+    }
+
+    static Object getAnnotationValue(
+            Map<? extends ExecutableElement, ? extends AnnotationValue> values, String name) {
+        return values.entrySet().stream()
+                .filter(e -> e.getKey().getSimpleName().contentEquals(name))
+                .findFirst()
+                .get()
+                .getValue()
+                .getValue();
     }
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+        if (stats != null) {
+            round = stats.startRound();
+        }
         for (TypeElement annotation : annotations) {
+            Set<? extends Element> elements = env.getElementsAnnotatedWith(annotation);
+            long start = System.nanoTime();
             if (annotation.getQualifiedName().contentEquals(TYPE_TOKEN_ANNOTATION_NAME)) {
-                generateSafeCast(annotation, env);
+                generateSafeCast(elements);
+                if (round != null) {
+                    round.addSafeCastNanos(System.nanoTime() - start);
+                }
             } else if (annotation.getQualifiedName().contentEquals(CONTAINER_ANNOTATION_NAME)) {
-                for (Element element : env.getElementsAnnotatedWith(annotation)) {
+                for (Element element : elements) {
                     generateContainer(annotation, (TypeElement) element);
                 }
+                if (round != null) {
+                    round.addContainerNanos(System.nanoTime() - start);
+                }
+            }
+            if (round != null) {
+                round.addElements(annotation.getQualifiedName().toString(), elements.size());
+            }
+        }
+        if (env.processingOver()) {
+            writeIndex();
+            if (stats != null) {
+                writeStats();
             }
         }
         return false;
     }
 
+    private String getBinaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    /**
+     * Writes the index of annotated classes. The processor is registered as aggregating for
+     * Gradle, so every annotated class of the module is processed again on an incremental build
+     * and the index is rebuilt from the classes seen in this compilation only; reading back the
+     * index left by a previous compilation would keep entries for deleted classes.
+     */
+    private void writeIndex() {
+        if (index.isEmpty()) {
+            return;
+        }
+        Filer filer = processingEnv.getFiler();
+        try (Writer out =
+                new OutputStreamWriter(
+                        filer.createResource(
+                                        StandardLocation.CLASS_OUTPUT,
+                                        "",
+                                        RegistryIndex.RESOURCE_NAME,
+                                        indexedElements.toArray(
+                                                new Element[indexedElements.size()]))
+                                .openOutputStream(),
+                        StandardCharsets.UTF_8)) {
+            index.writeTo(out);
+        } catch (IOException ex) {
+            processingEnv
+                    .getMessager()
+                    .printMessage(
+                            Kind.ERROR, "Failed to write " + RegistryIndex.RESOURCE_NAME);
+        }
+    }
+
+    private void writeStats() {
+        try {
+            Files.write(
+                    Paths.get(statsFile), stats.toJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            processingEnv
+                    .getMessager()
+                    .printMessage(
+                            Kind.WARNING,
+                            "Failed to write statistics to " + statsFile + ": " + ex.getMessage());
+        }
+        processingEnv.getMessager().printMessage(Kind.NOTE, stats.getSummary());
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return new HashSet<>(
+                Arrays.asList(
+                        STATS_OPTION, BACKEND_OPTION, METRICS_OPTION, CHECKS_OPTION, SPLIT_OPTION));
+    }
+
     @Override
     public Set<String> getSupportedAnnotationTypes() {
         return new HashSet<>(Arrays.asList(TYPE_TOKEN_ANNOTATION_NAME, CONTAINER_ANNOTATION_NAME));
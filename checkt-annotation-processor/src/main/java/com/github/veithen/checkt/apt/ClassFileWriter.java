@@ -0,0 +1,564 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer for class files, supporting only the instructions used by the class file
+ * backend. Class files are written with version 49 (Java 5) so that no stack map frames need to
+ * be computed; the maximum stack size is tracked as instructions are added.
+ */
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_PROTECTED = 0x0004;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+    static final int ACC_BRIDGE = 0x0040;
+    static final int ACC_ABSTRACT = 0x0400;
+    static final int ACC_SYNTHETIC = 0x1000;
+
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IF_ACMPEQ = 0xa5;
+    static final int IF_ACMPNE = 0xa6;
+    static final int GOTO = 0xa7;
+    static final int IFNULL = 0xc6;
+
+    private static final int MAJOR_VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /** A position in the code of a method that can be the target of a jump. */
+    static final class Label {
+        private int position = -1;
+        private int stack = -1;
+        private final List<int[]> fixups = new ArrayList<>();
+    }
+
+    /** Builds the code of a method. */
+    final class Code {
+        private final ByteVector code = new ByteVector();
+        private int stack;
+        private int maxStack;
+        private int maxLocals;
+        private boolean reachable = true;
+
+        Code(int access, String descriptor) {
+            maxLocals = argumentSize(descriptor) + ((access & ACC_STATIC) == 0 ? 1 : 0);
+        }
+
+        private void push(int size) {
+            stack += size;
+            if (stack > maxStack) {
+                maxStack = stack;
+            }
+        }
+
+        private void pop(int size) {
+            stack -= size;
+        }
+
+        private void local(int index) {
+            if (index >= maxLocals) {
+                maxLocals = index + 1;
+            }
+        }
+
+        private void loadOrStore(int shortOpcode, int opcode, int index) {
+            local(index);
+            if (index <= 3) {
+                code.putByte(shortOpcode + index);
+            } else {
+                code.putByte(opcode).putByte(index);
+            }
+        }
+
+        void aload(int index) {
+            loadOrStore(0x2a, 0x19, index);
+            push(1);
+        }
+
+        void iload(int index) {
+            loadOrStore(0x1a, 0x15, index);
+            push(1);
+        }
+
+        void aconstNull() {
+            code.putByte(0x01);
+            push(1);
+        }
+
+        void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                code.putByte(0x03 + value);
+            } else {
+                code.putByte(0x10).putByte(value);
+            }
+            push(1);
+        }
+
+        /** Loads a string constant. */
+        void ldc(String value) {
+            loadConstant(stringConstant(value));
+        }
+
+        /** Loads the {@link Class} object for a type. */
+        void ldcClass(String type) {
+            loadConstant(classConstant(type));
+        }
+
+        private void loadConstant(int index) {
+            if (index < 256) {
+                code.putByte(0x12).putByte(index);
+            } else {
+                code.putByte(0x13).putShort(index);
+            }
+            push(1);
+        }
+
+        void pop() {
+            code.putByte(0x57);
+            pop(1);
+        }
+
+        void dup() {
+            code.putByte(0x59);
+            push(1);
+        }
+
+        void newObject(String type) {
+            code.putByte(0xbb).putShort(classConstant(type));
+            push(1);
+        }
+
+        void checkcast(String type) {
+            code.putByte(0xc0).putShort(classConstant(type));
+        }
+
+        void getstatic(String owner, String name, String descriptor) {
+            code.putByte(0xb2).putShort(memberConstant(CONSTANT_FIELDREF, owner, name, descriptor));
+            push(typeSize(descriptor));
+        }
+
+        void putstatic(String owner, String name, String descriptor) {
+            code.putByte(0xb3).putShort(memberConstant(CONSTANT_FIELDREF, owner, name, descriptor));
+            pop(typeSize(descriptor));
+        }
+
+        void getfield(String owner, String name, String descriptor) {
+            code.putByte(0xb4).putShort(memberConstant(CONSTANT_FIELDREF, owner, name, descriptor));
+            pop(1);
+            push(typeSize(descriptor));
+        }
+
+        void putfield(String owner, String name, String descriptor) {
+            code.putByte(0xb5).putShort(memberConstant(CONSTANT_FIELDREF, owner, name, descriptor));
+            pop(1 + typeSize(descriptor));
+        }
+
+        private void invoke(int opcode, int tag, String owner, String name, String descriptor) {
+            code.putByte(opcode).putShort(memberConstant(tag, owner, name, descriptor));
+            int argumentSize = argumentSize(descriptor);
+            if (opcode == 0xb9) {
+                code.putByte(argumentSize + 1).putByte(0);
+            }
+            pop(argumentSize + (opcode == 0xb8 ? 0 : 1));
+            push(typeSize(descriptor.substring(descriptor.indexOf(')') + 1)));
+        }
+
+        void invokevirtual(String owner, String name, String descriptor) {
+            invoke(0xb6, CONSTANT_METHODREF, owner, name, descriptor);
+        }
+
+        void invokespecial(String owner, String name, String descriptor) {
+            invoke(0xb7, CONSTANT_METHODREF, owner, name, descriptor);
+        }
+
+        void invokestatic(String owner, String name, String descriptor) {
+            invoke(0xb8, CONSTANT_METHODREF, owner, name, descriptor);
+        }
+
+        void invokeinterface(String owner, String name, String descriptor) {
+            invoke(0xb9, CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+        }
+
+        /**
+         * Adds a conditional or unconditional jump.
+         *
+         * @param opcode one of the jump opcodes defined by {@link ClassFileWriter}
+         * @param label the target of the jump
+         */
+        void jump(int opcode, Label label) {
+            int start = code.length();
+            code.putByte(opcode);
+            if (opcode == IF_ACMPEQ || opcode == IF_ACMPNE) {
+                pop(2);
+            } else if (opcode != GOTO) {
+                pop(1);
+            }
+            label.stack = stack;
+            if (label.position == -1) {
+                label.fixups.add(new int[] {start, code.length()});
+                code.putShort(0);
+            } else {
+                code.putShort(label.position - start);
+            }
+            if (opcode == GOTO) {
+                reachable = false;
+            }
+        }
+
+        void mark(Label label) {
+            label.position = code.length();
+            for (int[] fixup : label.fixups) {
+                code.setShort(fixup[1], label.position - fixup[0]);
+            }
+            if (!reachable) {
+                stack = label.stack;
+                reachable = true;
+            }
+        }
+
+        void athrow() {
+            code.putByte(0xbf);
+            pop(1);
+            reachable = false;
+        }
+
+        void ireturn() {
+            code.putByte(0xac);
+            pop(1);
+            reachable = false;
+        }
+
+        void areturn() {
+            code.putByte(0xb0);
+            pop(1);
+            reachable = false;
+        }
+
+        void returnVoid() {
+            code.putByte(0xb1);
+            reachable = false;
+        }
+
+        /** Adds the instructions that throw a {@link ClassCastException} without message. */
+        void throwClassCastException() {
+            newObject("java/lang/ClassCastException");
+            dup();
+            invokespecial("java/lang/ClassCastException", "<init>", "()V");
+            athrow();
+        }
+    }
+
+    private static final class ByteVector {
+        private byte[] data = new byte[64];
+        private int length;
+
+        private void ensureCapacity(int size) {
+            if (length + size > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + size));
+            }
+        }
+
+        ByteVector putByte(int b) {
+            ensureCapacity(1);
+            data[length++] = (byte) b;
+            return this;
+        }
+
+        ByteVector putShort(int s) {
+            ensureCapacity(2);
+            data[length++] = (byte) (s >>> 8);
+            data[length++] = (byte) s;
+            return this;
+        }
+
+        ByteVector putInt(int i) {
+            return putShort(i >>> 16).putShort(i);
+        }
+
+        ByteVector putBytes(ByteVector bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes.data, 0, data, length, bytes.length);
+            length += bytes.length;
+            return this;
+        }
+
+        /** Writes a string in the modified UTF-8 encoding used in class files. */
+        ByteVector putUtf8(String s) {
+            ByteVector encoded = new ByteVector();
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c != 0 && c < 0x80) {
+                    encoded.putByte(c);
+                } else if (c < 0x800) {
+                    encoded.putByte(0xc0 | (c >> 6)).putByte(0x80 | (c & 0x3f));
+                } else {
+                    encoded.putByte(0xe0 | (c >> 12))
+                            .putByte(0x80 | ((c >> 6) & 0x3f))
+                            .putByte(0x80 | (c & 0x3f));
+                }
+            }
+            return putShort(encoded.length).putBytes(encoded);
+        }
+
+        void setShort(int index, int s) {
+            data[index] = (byte) (s >>> 8);
+            data[index + 1] = (byte) s;
+        }
+
+        int length() {
+            return length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, length);
+        }
+    }
+
+    private static final class Method {
+        final int access;
+        final int name;
+        final int descriptor;
+        final int signature;
+        final Code code;
+
+        Method(int access, int name, int descriptor, int signature, Code code) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.signature = signature;
+            this.code = code;
+        }
+    }
+
+    private final ByteVector pool = new ByteVector();
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private int poolCount = 1;
+    private final int access;
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final int signature;
+    private final ByteVector fields = new ByteVector();
+    private int fieldCount;
+    private final List<Method> methods = new ArrayList<>();
+    private final ByteVector innerClasses = new ByteVector();
+    private int innerClassCount;
+
+    /**
+     * Constructor.
+     *
+     * @param access the access flags of the class
+     * @param name the internal name of the class
+     * @param superName the internal name of the superclass
+     * @param signature the generic signature of the class, or {@code null}
+     * @param interfaces the internal names of the interfaces implemented by the class
+     */
+    ClassFileWriter(
+            int access, String name, String superName, String signature, String... interfaces) {
+        this.access = access;
+        thisClass = classConstant(name);
+        superClass = classConstant(superName);
+        this.interfaces = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            this.interfaces[i] = classConstant(interfaces[i]);
+        }
+        this.signature = signature == null ? 0 : utf8Constant(signature);
+    }
+
+    private int constant(String key, ByteVector entry) {
+        Integer index = poolIndexes.get(key);
+        if (index == null) {
+            index = poolCount++;
+            poolIndexes.put(key, index);
+            pool.putBytes(entry);
+        }
+        return index;
+    }
+
+    private int utf8Constant(String value) {
+        return constant(
+                CONSTANT_UTF8 + ":" + value,
+                new ByteVector().putByte(CONSTANT_UTF8).putUtf8(value));
+    }
+
+    private int classConstant(String name) {
+        int nameIndex = utf8Constant(name);
+        return constant(
+                CONSTANT_CLASS + ":" + name,
+                new ByteVector().putByte(CONSTANT_CLASS).putShort(nameIndex));
+    }
+
+    private int stringConstant(String value) {
+        int valueIndex = utf8Constant(value);
+        return constant(
+                CONSTANT_STRING + ":" + value,
+                new ByteVector().putByte(CONSTANT_STRING).putShort(valueIndex));
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classConstant(owner);
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        int nameAndTypeIndex =
+                constant(
+                        CONSTANT_NAME_AND_TYPE + ":" + name + ":" + descriptor,
+                        new ByteVector()
+                                .putByte(CONSTANT_NAME_AND_TYPE)
+                                .putShort(nameIndex)
+                                .putShort(descriptorIndex));
+        return constant(
+                tag + ":" + owner + ":" + name + ":" + descriptor,
+                new ByteVector().putByte(tag).putShort(ownerIndex).putShort(nameAndTypeIndex));
+    }
+
+    private static int typeSize(String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'V':
+                return 0;
+            case 'J':
+            case 'D':
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    /** Returns the number of local variable slots used by the arguments of a method. */
+    private static int argumentSize(String descriptor) {
+        int size = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            if (c == 'J' || c == 'D') {
+                size += 2;
+                i++;
+            } else {
+                while (c == '[') {
+                    c = descriptor.charAt(++i);
+                }
+                i = c == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+                size++;
+            }
+        }
+        return size;
+    }
+
+    void addField(int access, String name, String descriptor, String signature) {
+        fields.putShort(access).putShort(utf8Constant(name)).putShort(utf8Constant(descriptor));
+        if (signature == null) {
+            fields.putShort(0);
+        } else {
+            fields.putShort(1)
+                    .putShort(utf8Constant("Signature"))
+                    .putInt(2)
+                    .putShort(utf8Constant(signature));
+        }
+        fieldCount++;
+    }
+
+    /**
+     * Adds a method.
+     *
+     * @return the builder for the code of the method
+     */
+    Code addMethod(int access, String name, String descriptor, String signature) {
+        Code code = new Code(access, descriptor);
+        methods.add(
+                new Method(
+                        access,
+                        utf8Constant(name),
+                        utf8Constant(descriptor),
+                        signature == null ? 0 : utf8Constant(signature),
+                        code));
+        return code;
+    }
+
+    /**
+     * Adds an entry to the {@code InnerClasses} attribute.
+     *
+     * @param name the internal name of the nested class
+     * @param outerName the internal name of the enclosing class
+     * @param simpleName the simple name of the nested class
+     * @param access the access flags of the nested class as declared in the source code
+     */
+    void addInnerClass(String name, String outerName, String simpleName, int access) {
+        innerClasses
+                .putShort(classConstant(name))
+                .putShort(classConstant(outerName))
+                .putShort(utf8Constant(simpleName))
+                .putShort(access);
+        innerClassCount++;
+    }
+
+    byte[] toByteArray() {
+        // Attribute names must be added to the constant pool before it is written.
+        int codeName = utf8Constant("Code");
+        int signatureName = utf8Constant("Signature");
+        int innerClassesName = utf8Constant("InnerClasses");
+        ByteVector out = new ByteVector();
+        out.putInt(0xCAFEBABE).putShort(0).putShort(MAJOR_VERSION);
+        out.putShort(poolCount).putBytes(pool);
+        out.putShort(access).putShort(thisClass).putShort(superClass);
+        out.putShort(interfaces.length);
+        for (int itf : interfaces) {
+            out.putShort(itf);
+        }
+        out.putShort(fieldCount).putBytes(fields);
+        out.putShort(methods.size());
+        for (Method method : methods) {
+            out.putShort(method.access).putShort(method.name).putShort(method.descriptor);
+            out.putShort(method.signature == 0 ? 1 : 2);
+            ByteVector code = method.code.code;
+            out.putShort(codeName).putInt(12 + code.length());
+            out.putShort(method.code.maxStack).putShort(method.code.maxLocals);
+            out.putInt(code.length()).putBytes(code);
+            out.putShort(0).putShort(0);
+            if (method.signature != 0) {
+                out.putShort(signatureName).putInt(2).putShort(method.signature);
+            }
+        }
+        int attributeCount = (signature == 0 ? 0 : 1) + (innerClassCount == 0 ? 0 : 1);
+        out.putShort(attributeCount);
+        if (signature != 0) {
+            out.putShort(signatureName).putInt(2).putShort(signature);
+        }
+        if (innerClassCount != 0) {
+            out.putShort(innerClassesName).putInt(2 + innerClasses.length());
+            out.putShort(innerClassCount).putBytes(innerClasses);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,2045 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+
+/**
+ * Generates the source code of the container class for an element annotated with {@code
+ * Container}. The generated class stores keys and values as raw objects in private storage and
+ * exposes them through methods that use the type parameters of the annotated element to link the
+ * key type to the value type.
+ */
+final class ContainerGenerator implements SourceProvider {
+    private final ContainerModel container;
+    private final String commonModifiers;
+    private final int capacity;
+    private final boolean metrics;
+
+    ContainerGenerator(ContainerModel container, boolean metrics) {
+        this.container = container;
+        commonModifiers = container.isPublic() ? "public " : "";
+        capacity = capacity(container.getExpectedSize());
+        // A scoped container is created for every entry added, so it can't have counters.
+        this.metrics = metrics && !container.isScoped();
+    }
+
+    /**
+     * The largest supported value for {@code expectedSize} and {@code maximumSize}. Larger values
+     * would make the capacity computed by {@link #capacity(int)} overflow.
+     */
+    static final int MAX_SIZE = 1 << 29;
+
+    /**
+     * Computes the initial capacity of the identity table so that it can hold the given number of
+     * entries without being resized. The capacity is a power of two and the load factor doesn't
+     * exceed 2/3. The expected size must not exceed {@link #MAX_SIZE}.
+     */
+    static int capacity(int expectedSize) {
+        int capacity = 4;
+        while (expectedSize * 3L > capacity * 2L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    @Override
+    public void writeTo(SourceWriter out) {
+        out.print("package ");
+        out.print(container.getPackage().getQualifiedName());
+        out.println(";");
+        out.println();
+        switch (container.getStorage()) {
+            case SCOPED:
+                out.println("import java.util.Objects;");
+                out.println();
+                break;
+            case FROZEN:
+                out.println("import java.util.ArrayList;");
+                out.println("import java.util.Arrays;");
+                out.println("import java.util.HashSet;");
+                out.println("import java.util.IdentityHashMap;");
+                out.println("import java.util.List;");
+                out.println("import java.util.Map;");
+                out.println("import java.util.Objects;");
+                out.println("import java.util.Set;");
+                out.println("import java.util.SplittableRandom;");
+                out.println();
+                break;
+            case BOUNDED:
+                out.println("import java.util.Objects;");
+                out.println();
+                break;
+            case CLASS_VALUE:
+                out.println("import java.lang.ref.WeakReference;");
+                if (container.isHierarchical()) {
+                    out.println("import java.util.ArrayDeque;");
+                    out.println("import java.util.HashSet;");
+                    out.println("import java.util.Set;");
+                }
+                if (container.isConcurrent()) {
+                    if (container.isHierarchical()) {
+                        out.println(
+                                "import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;");
+                    }
+                    out.println(
+                            "import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;");
+                }
+                out.println();
+                break;
+            case ORDINAL:
+                if (container.isConcurrent()) {
+                    out.println("import java.util.concurrent.atomic.AtomicReferenceArray;");
+                    out.println();
+                }
+                break;
+            case WEAK_KEYS:
+                out.println("import java.lang.ref.Reference;");
+                out.println("import java.lang.ref.ReferenceQueue;");
+                out.println("import java.lang.ref.WeakReference;");
+                out.println("import java.util.Objects;");
+                out.println();
+                break;
+            case CONCURRENT_TABLE:
+                out.println("import java.util.Objects;");
+                out.println("import java.util.concurrent.atomic.AtomicInteger;");
+                out.println("import java.util.concurrent.atomic.AtomicReferenceArray;");
+                out.println();
+                break;
+            case EQUALITY_TABLE:
+            case IDENTITY_TABLE:
+                out.println("import java.util.Objects;");
+                out.println();
+                break;
+        }
+        out.print(commonModifiers);
+        out.print("final class ");
+        out.print(container.getClassName());
+        out.println(" {");
+        switch (container.getStorage()) {
+            case SCOPED:
+                writeScopedStorage(out);
+                break;
+            case FROZEN:
+                writeFrozenStorage(out);
+                break;
+            case BOUNDED:
+                writeBoundedStorage(out);
+                break;
+            case CLASS_VALUE:
+                writeClassValueStorage(out);
+                break;
+            case ORDINAL:
+                writeOrdinalStorage(out);
+                break;
+            case WEAK_KEYS:
+                writeWeakKeyStorage(out);
+                break;
+            case CONCURRENT_TABLE:
+                writeConcurrentTableStorage(out);
+                break;
+            case EQUALITY_TABLE:
+                writeEqualityStorage(out);
+                break;
+            case IDENTITY_TABLE:
+                writeOpenAddressingStorage(out);
+                break;
+        }
+
+        out.println();
+        printCallbackInterface(
+                out, "Visitor", "void", "visit", container.getValueType() + " value");
+        out.println();
+        out.print("    private static ");
+        if (!container.getTypeParameters().isEmpty()) {
+            out.print(container.getTypeParameters());
+            out.print(" ");
+        }
+        out.println("void accept(Visitor visitor, Object key, Object value) {");
+        if (container.isMultiValued()) {
+            out.println("        if (value instanceof Values) {");
+            out.println("            for (Object element : ((Values)value).elements) {");
+            out.print("                visitor.visit((");
+            out.print(container.getKeyType());
+            out.print(")key, (");
+            out.print(container.getValueType());
+            out.println(")element);");
+            out.println("            }");
+            out.println("            return;");
+            out.println("        }");
+        }
+        out.print("        visitor.visit((");
+        out.print(container.getKeyType());
+        out.print(")key, (");
+        out.print(container.getValueType());
+        out.println(")value);");
+        out.println("    }");
+        if (container.getMaximumSize() > 0) {
+            out.println();
+            printCallbackInterface(
+                    out, "Loader", container.getValueType().toString(), "load", null);
+        }
+
+        if (container.isMultiValued()) {
+            writeMultiValuedMethods(out);
+        } else {
+            if (container.isScoped()) {
+                printMethodHeader(out, container.getClassName(), "with", keyValueParameters());
+                out.println("        return update(key, value);");
+                out.println("    }");
+
+                printMethodHeader(
+                        out, container.getClassName(), "without", container.getKeyType() + " key");
+                out.println("        return update(key, null);");
+                out.println("    }");
+            } else if (!container.isFrozen()) {
+                printMethodHeader(out, "put", keyValueParameters());
+                printReturn(out, "(value == null ? delete(key) : store(key, value, false))");
+                out.println("    }");
+            }
+
+            printMethodHeader(out, "get", container.getKeyType() + " key");
+            if (metrics) {
+                printLookup(out);
+                printReturn(out, "value");
+            } else {
+                printReturn(out, "lookup(key)");
+            }
+            out.println("    }");
+
+            if (container.isHierarchical()) {
+                printMethodHeader(out, "resolve", container.getKeyType() + " key");
+                out.println("        Object value = lookupHierarchy(key);");
+                if (metrics) {
+                    out.println("        (value == null ? misses : hits).increment();");
+                }
+                printReturn(out, "value");
+                out.println("    }");
+            }
+
+            if (container.getMaximumSize() > 0) {
+                printMethodHeader(out, "get", container.getKeyType() + " key, Loader loader");
+                printLookup(out);
+                out.println("        if (value == null) {");
+                out.println("            value = loader.load(key);");
+                printStoreIfAbsent(out);
+                out.println("        }");
+                printReturn(out, "value");
+                out.println("    }");
+            }
+
+            if (container.isConcurrent()) {
+                printMethodHeader(out, "putIfAbsent", keyValueParameters());
+                printReturn(out, "(value == null ? lookup(key) : store(key, value, true))");
+                out.println("    }");
+            }
+
+            if (!container.isFrozen() && !container.isScoped()) {
+                printMethodHeader(
+                        out,
+                        "computeIfAbsent",
+                        container.getKeyType()
+                                + " key, java.util.function.Function<? super "
+                                + container.getKeyType()
+                                + ", ? extends "
+                                + container.getValueType()
+                                + "> mappingFunction");
+                printLookup(out);
+                out.println("        if (value == null) {");
+                out.println("            value = mappingFunction.apply(key);");
+                printStoreIfAbsent(out);
+                out.println("        }");
+                printReturn(out, "value");
+                out.println("    }");
+
+                printMethodHeader(out, "remove", container.getKeyType() + " key");
+                printReturn(out, "delete(key)");
+                out.println("    }");
+            }
+        }
+
+        printMethodHeader(out, "boolean", "containsKey", container.getKeyType() + " key");
+        out.print("        return ");
+        out.print(container.getMaximumSize() > 0 ? "peek" : "lookup");
+        out.println("(key) != null;");
+        out.println("    }");
+
+        out.println();
+        out.print("    ");
+        out.print(commonModifiers);
+        out.println("int size() {");
+        out.println("        return count();");
+        out.println("    }");
+
+        out.println();
+        out.print("    ");
+        out.print(commonModifiers);
+        out.println("void forEach(Visitor visitor) {");
+        out.println("        visit(visitor);");
+        out.println("    }");
+
+        if (metrics) {
+            writeMetrics(out);
+        }
+        out.println("}");
+    }
+
+    /**
+     * Writes the methods specific to multi-valued containers. The raw value stored for a key is
+     * either the single value or a {@code Values} instance wrapping an array of values. Since that
+     * array is never modified, concurrent readers always see a consistent snapshot; writers only
+     * need to be serialized with respect to each other.
+     */
+    private void writeMultiValuedMethods(SourceWriter out) {
+        String sync = container.isConcurrent() ? "synchronized " : "";
+        String listType = "java.util.List<" + container.getValueType() + ">";
+        out.println();
+        out.println("    private static final class Values {");
+        out.println("        final Object[] elements;");
+        out.println();
+        out.println("        Values(Object... elements) {");
+        out.println("            this.elements = elements;");
+        out.println("        }");
+        out.println();
+        out.println("        Values with(Object element) {");
+        out.println("            Object[] newElements =");
+        out.println("                    java.util.Arrays.copyOf(elements, elements.length + 1);");
+        out.println("            newElements[elements.length] = element;");
+        out.println("            return new Values(newElements);");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private static java.util.List<?> asList(Object value) {");
+        out.println("        if (value == null) {");
+        out.println("            return java.util.Collections.emptyList();");
+        out.println("        } else if (value instanceof Values) {");
+        out.println("            return java.util.Collections.unmodifiableList(");
+        out.println("                    java.util.Arrays.asList(((Values)value).elements));");
+        out.println("        } else {");
+        out.println("            return java.util.Collections.singletonList(value);");
+        out.println("        }");
+        out.println("    }");
+
+        printMethodHeader(out, sync, "void", "add", keyValueParameters());
+        out.println("        java.util.Objects.requireNonNull(value);");
+        out.println("        Object current = lookup(key);");
+        out.println("        if (current == null) {");
+        out.println("            store(key, value, false);");
+        out.println("        } else if (current instanceof Values) {");
+        out.println("            store(key, ((Values)current).with(value), false);");
+        out.println("        } else {");
+        out.println("            store(key, new Values(current, value), false);");
+        out.println("        }");
+        out.println("    }");
+
+        printMethodHeader(out, "", listType, "getAll", container.getKeyType() + " key");
+        if (metrics) {
+            printLookup(out);
+        }
+        out.print("        return (");
+        out.print(listType);
+        out.print(")asList(");
+        out.print(metrics ? "value" : "lookup(key)");
+        out.println(");");
+        out.println("    }");
+
+        printMethodHeader(out, sync, listType, "removeAll", container.getKeyType() + " key");
+        out.print("        return (");
+        out.print(listType);
+        out.println(")asList(delete(key));");
+        out.println("    }");
+    }
+
+    /**
+     * Prints a nested interface with a single generic method that takes a key and optionally a
+     * value, so that the type parameters of the annotated element link them together.
+     */
+    private void printCallbackInterface(
+            SourceWriter out,
+            String name,
+            String returnType,
+            String methodName,
+            String valueParameter) {
+        out.print("    ");
+        out.print(commonModifiers);
+        out.print("interface ");
+        out.print(name);
+        out.println(" {");
+        out.print("        ");
+        if (!container.getTypeParameters().isEmpty()) {
+            out.print(container.getTypeParameters());
+            out.print(" ");
+        }
+        out.print(returnType);
+        out.print(" ");
+        out.print(methodName);
+        out.print("(");
+        out.print(container.getKeyType());
+        out.print(" key");
+        if (valueParameter != null) {
+            out.print(", ");
+            out.print(valueParameter);
+        }
+        out.println(");");
+        out.println("    }");
+    }
+
+    /** Returns the parameter list of the methods that take a key and a value. */
+    private String keyValueParameters() {
+        return container.getKeyType() + " key, " + container.getValueType() + " value";
+    }
+
+    private void printMethodHeader(SourceWriter out, String name, String parameters) {
+        printMethodHeader(out, container.getValueType().toString(), name, parameters);
+    }
+
+    private void printMethodHeader(
+            SourceWriter out, String returnType, String name, String parameters) {
+        printMethodHeader(out, "", returnType, name, parameters);
+    }
+
+    private void printMethodHeader(
+            SourceWriter out,
+            String modifiers,
+            String returnType,
+            String name,
+            String parameters) {
+        out.println();
+        out.print("    ");
+        out.print(commonModifiers);
+        out.print(modifiers);
+        if (!container.getTypeParameters().isEmpty()) {
+            out.print(container.getTypeParameters());
+            out.print(" ");
+        }
+        out.print(returnType);
+        out.print(" ");
+        out.print(name);
+        out.print("(");
+        out.print(parameters);
+        out.println(") {");
+    }
+
+    /**
+     * Prints the code that looks up the value for a key, counting hits and misses if metrics are
+     * enabled.
+     */
+    private void printLookup(SourceWriter out) {
+        out.println("        Object value = lookup(key);");
+        if (metrics) {
+            out.println("        (value == null ? misses : hits).increment();");
+        }
+    }
+
+    /** Writes the counters and the method that returns a snapshot of them. */
+    private void writeMetrics(SourceWriter out) {
+        out.println();
+        out.println("    private final java.util.concurrent.atomic.LongAdder hits =");
+        out.println("            new java.util.concurrent.atomic.LongAdder();");
+        out.println("    private final java.util.concurrent.atomic.LongAdder misses =");
+        out.println("            new java.util.concurrent.atomic.LongAdder();");
+        out.println();
+        out.print("    ");
+        out.print(commonModifiers);
+        out.println("java.util.Map<String, Long> metrics() {");
+        out.println("        long hits = this.hits.sum();");
+        out.println("        long misses = this.misses.sum();");
+        out.println("        java.util.Map<String, Long> metrics =");
+        out.println("                new java.util.LinkedHashMap<>();");
+        out.println("        metrics.put(\"gets\", hits + misses);");
+        out.println("        metrics.put(\"hits\", hits);");
+        out.println("        metrics.put(\"misses\", misses);");
+        out.println("        metrics.put(\"size\", (long)count());");
+        out.println("        return java.util.Collections.unmodifiableMap(metrics);");
+        out.println("    }");
+    }
+
+    /**
+     * Prints the code that stores a computed value unless another value has been stored in the
+     * meantime, in which case that value is used instead.
+     */
+    private static void printStoreIfAbsent(SourceWriter out) {
+        out.println("            if (value != null) {");
+        out.println("                Object previous = store(key, value, true);");
+        out.println("                if (previous != null) {");
+        out.println("                    value = previous;");
+        out.println("                }");
+        out.println("            }");
+    }
+
+    private void printReturn(SourceWriter out, String expression) {
+        out.print("        return (");
+        out.print(container.getValueType());
+        out.print(")");
+        out.print(expression);
+        out.println(";");
+    }
+
+    /**
+     * Writes the storage for containers keyed by {@link Class}. Values are kept in per-class slots
+     * so that a lookup is a {@link ClassValue} access followed by a field load, and the container
+     * doesn't keep strong references to the classes (and their class loaders). Values are only
+     * strongly reachable through the slots, i.e. through the classes, so that a value referencing
+     * the class loader of its key doesn't prevent that class loader from being collected. Since a
+     * {@link ClassValue} can't be enumerated, slots that have been assigned a value are also linked
+     * into a list; the list only references the slots weakly, and links to slots of unloaded
+     * classes are removed the next time a slot is added to the list. Note that {@link ClassValue}
+     * has no way to query a value without computing it, so the first lookup of a class without an
+     * entry also creates a (empty) slot for it. That slot is reused by subsequent lookups and is
+     * retained until the container or the class becomes unreachable; the memory overhead is
+     * therefore bounded by the number of distinct classes looked up, not by the number of lookups.
+     */
+    private void writeClassValueStorage(SourceWriter out) {
+        String sync = container.isConcurrent() ? "synchronized " : "";
+        out.println("    private static final class Slot extends WeakReference<Class<?>> {");
+        if (container.isConcurrent()) {
+            out.println("        static final AtomicReferenceFieldUpdater<Slot, Object> VALUE =");
+            out.println(
+                    "                AtomicReferenceFieldUpdater.newUpdater("
+                            + "Slot.class, Object.class, \"value\");");
+            out.println();
+            out.println("        volatile Object value;");
+        } else {
+            out.println("        Object value;");
+        }
+        out.println("        boolean linked;");
+        if (container.isHierarchical()) {
+            out.print(container.isConcurrent() ? "        volatile " : "        ");
+            out.println("Resolution resolution;");
+        }
+        out.println();
+        out.println("        Slot(Class<?> type) {");
+        out.println("            super(type);");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private static final class Link extends WeakReference<Slot> {");
+        out.println("        Link next;");
+        out.println();
+        out.println("        Link(Slot slot, Link next) {");
+        out.println("            super(slot);");
+        out.println("            this.next = next;");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private static final class Slots extends ClassValue<Slot> {");
+        out.println("        @Override");
+        out.println("        protected Slot computeValue(Class<?> type) {");
+        out.println("            return new Slot(type);");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        if (container.isHierarchical()) {
+            writeResolution(out);
+        }
+        out.println("    private final Slots slots = new Slots();");
+        out.print("    private ");
+        if (container.isConcurrent()) {
+            out.print("volatile ");
+        }
+        out.println("Link head;");
+        out.println();
+        out.println("    private Object lookup(Class<?> key) {");
+        out.println("        return key == null ? null : slots.get(key).value;");
+        out.println("    }");
+        out.println();
+        out.println("    private Object store(Class<?> key, Object value, boolean onlyIfAbsent) {");
+        out.println("        Slot slot = slots.get(key);");
+        if (container.isConcurrent()) {
+            out.println("        Object previous;");
+            out.println("        if (onlyIfAbsent) {");
+            out.println("            while ((previous = slot.value) == null");
+            out.println("                    && !Slot.VALUE.compareAndSet(slot, null, value)) {}");
+            out.println("        } else {");
+            out.println("            previous = Slot.VALUE.getAndSet(slot, value);");
+            out.println("        }");
+        } else {
+            out.println("        Object previous = slot.value;");
+            out.println("        if (previous == null || !onlyIfAbsent) {");
+            out.println("            slot.value = value;");
+            out.println("        }");
+        }
+        out.println("        if (value != null && !slot.linked) {");
+        out.println("            link(slot);");
+        out.println("        }");
+        if (container.isHierarchical()) {
+            out.println("        if ((previous == null) != (value == null)) {");
+            out.println(
+                    container.isConcurrent()
+                            ? "            GENERATION.incrementAndGet(this);"
+                            : "            generation++;");
+            out.println("        }");
+        }
+        out.println("        return previous;");
+        out.println("    }");
+        out.println();
+        out.println("    private Object delete(Class<?> key) {");
+        out.println("        return store(key, null, false);");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("void link(Slot slot) {");
+        out.println("        if (slot.linked) {");
+        out.println("            return;");
+        out.println("        }");
+        out.println("        Link prev = null;");
+        out.println("        for (Link link = head; link != null; link = link.next) {");
+        out.println("            Slot s = link.get();");
+        out.println("            if (s != null && s.get() != null) {");
+        out.println("                prev = link;");
+        out.println("            } else if (prev == null) {");
+        out.println("                head = link.next;");
+        out.println("            } else {");
+        out.println("                prev.next = link.next;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        slot.linked = true;");
+        out.println("        head = new Link(slot, head);");
+        out.println("    }");
+        out.println();
+        out.println("    private int count() {");
+        out.println("        int count = 0;");
+        out.println("        for (Link link = head; link != null; link = link.next) {");
+        out.println("            Slot s = link.get();");
+        out.println("            if (s != null && s.value != null && s.get() != null) {");
+        out.println("                count++;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        return count;");
+        out.println("    }");
+        out.println();
+        out.println("    private void visit(Visitor visitor) {");
+        out.println("        for (Link link = head; link != null; link = link.next) {");
+        out.println("            Slot s = link.get();");
+        out.println("            if (s == null) {");
+        out.println("                continue;");
+        out.println("            }");
+        out.println("            Object value = s.value;");
+        out.println("            Class<?> key = s.get();");
+        out.println("            if (value != null && key != null) {");
+        out.println("                accept(visitor, key, value);");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+        if (container.isHierarchical()) {
+            writeHierarchicalLookup(out);
+        }
+    }
+
+    /**
+     * Writes the class that caches the result of a hierarchical lookup in a slot, together with
+     * the generation counter that invalidates cached results when an entry is added or removed.
+     */
+    private void writeResolution(SourceWriter out) {
+        out.println("    private static final class Resolution {");
+        out.println("        final Slot slot;");
+        out.println("        final int generation;");
+        out.println();
+        out.println("        Resolution(Slot slot, int generation) {");
+        out.println("            this.slot = slot;");
+        out.println("            this.generation = generation;");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        if (container.isConcurrent()) {
+            out.print("    private static final AtomicIntegerFieldUpdater<");
+            out.print(container.getClassName());
+            out.println("> GENERATION =");
+            out.print("            AtomicIntegerFieldUpdater.newUpdater(");
+            out.print(container.getClassName());
+            out.println(".class, \"generation\");");
+            out.println();
+            out.println("    private volatile int generation;");
+        } else {
+            out.println("    private int generation;");
+        }
+        out.println();
+    }
+
+    /**
+     * Writes the methods that look up the value for the closest supertype of a class. The slot of
+     * the class caches the slot found, tagged with the generation read before the search. Since
+     * entries are added or removed before the generation is incremented, a result computed
+     * concurrently with such a change is tagged with the old generation and discarded.
+     */
+    private static void writeHierarchicalLookup(SourceWriter out) {
+        out.println();
+        out.println("    private Object lookupHierarchy(Class<?> key) {");
+        out.println("        Slot slot = slots.get(key);");
+        out.println("        Object value = slot.value;");
+        out.println("        if (value != null) {");
+        out.println("            return value;");
+        out.println("        }");
+        out.println("        int generation = this.generation;");
+        out.println("        Resolution resolution = slot.resolution;");
+        out.println("        if (resolution == null || resolution.generation != generation) {");
+        out.println("            resolution = new Resolution(findSupertype(key), generation);");
+        out.println("            slot.resolution = resolution;");
+        out.println("        }");
+        out.println("        return resolution.slot == null ? null : resolution.slot.value;");
+        out.println("    }");
+        out.println();
+        out.println("    private Slot findSupertype(Class<?> key) {");
+        out.println("        ArrayDeque<Class<?>> queue = new ArrayDeque<>();");
+        out.println("        Set<Class<?>> interfaces = new HashSet<>();");
+        out.println("        queue.add(key);");
+        out.println("        Class<?> type;");
+        out.println("        while ((type = queue.poll()) != null) {");
+        out.println("            Slot slot = slots.get(type);");
+        out.println("            if (slot.value != null) {");
+        out.println("                return slot;");
+        out.println("            }");
+        out.println("            Class<?> superclass = type.getSuperclass();");
+        out.println("            if (superclass != null) {");
+        out.println("                queue.add(superclass);");
+        out.println("            }");
+        out.println("            for (Class<?> iface : type.getInterfaces()) {");
+        out.println("                if (interfaces.add(iface)) {");
+        out.println("                    queue.add(iface);");
+        out.println("                }");
+        out.println("            }");
+        out.println("        }");
+        out.println("        return null;");
+        out.println("    }");
+    }
+
+    /**
+     * Writes the storage for containers keyed by an enum type. Values are stored in an array
+     * indexed by the ordinal of the key, so that no hashing is required.
+     */
+    private void writeOrdinalStorage(SourceWriter out) {
+        out.print("    private static final ");
+        out.print(container.getEnumType());
+        out.print("[] KEYS = ");
+        out.print(container.getEnumType());
+        out.println(".values();");
+        out.println();
+        if (container.isConcurrent()) {
+            out.print("    private final AtomicReferenceArray<Object> values =");
+            out.print(" new AtomicReferenceArray<>(");
+        } else {
+            out.print("    private final Object[] values = new Object[");
+        }
+        out.print("KEYS.length");
+        out.println(container.isConcurrent() ? ");" : "];");
+        out.println();
+        out.println("    private Object lookup(Enum<?> key) {");
+        if (container.isConcurrent()) {
+            out.println("        return values.get(key.ordinal());");
+        } else {
+            out.println("        return values[key.ordinal()];");
+        }
+        out.println("    }");
+        out.println();
+        out.println("    private Object store(Enum<?> key, Object value, boolean onlyIfAbsent) {");
+        out.println("        int i = key.ordinal();");
+        if (container.isConcurrent()) {
+            out.println("        if (!onlyIfAbsent) {");
+            out.println("            return values.getAndSet(i, value);");
+            out.println("        }");
+            out.println("        while (true) {");
+            out.println("            Object previous = values.get(i);");
+            out.println("            if (previous != null");
+            out.println("                    || values.compareAndSet(i, null, value)) {");
+            out.println("                return previous;");
+            out.println("            }");
+            out.println("        }");
+        } else {
+            out.println("        Object previous = values[i];");
+            out.println("        if (previous == null || !onlyIfAbsent) {");
+            out.println("            values[i] = value;");
+            out.println("        }");
+            out.println("        return previous;");
+        }
+        out.println("    }");
+        out.println();
+        out.println("    private Object delete(Enum<?> key) {");
+        out.println("        return store(key, null, false);");
+        out.println("    }");
+        out.println();
+        out.println("    private int count() {");
+        out.println("        int count = 0;");
+        out.println("        for (int i = 0; i < KEYS.length; i++) {");
+        out.print("            if (");
+        out.print(container.isConcurrent() ? "values.get(i)" : "values[i]");
+        out.println(" != null) {");
+        out.println("                count++;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        return count;");
+        out.println("    }");
+        out.println();
+        out.println("    private void visit(Visitor visitor) {");
+        out.println("        for (int i = 0; i < KEYS.length; i++) {");
+        out.print("            Object value = ");
+        out.print(container.isConcurrent() ? "values.get(i)" : "values[i]");
+        out.println(";");
+        out.println("            if (value != null) {");
+        out.println("                accept(visitor, KEYS[i], value);");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /**
+     * Writes the storage for thread safe containers with arbitrary keys. The entries are stored in
+     * an open addressing table (keys and values interleaved) backed by an {@code
+     * AtomicReferenceArray}. A new key claims an empty slot with a CAS and values are replaced
+     * with a CAS on their slot, so that writers only contend when they access the same slot and
+     * reads never block. Keys are never removed from a table: removing an entry only clears its
+     * value. The table is rebuilt (under a lock) when the number of claimed slots exceeds the load
+     * factor; this freezes the values of the old table, so that concurrent writers retry on the new
+     * table, while readers can still read the frozen values. Rebuilding also drops the keys of
+     * removed entries. For equality-keyed containers, the key slots contain nodes that cache the
+     * hash code of the key, which is used to avoid calls to {@code equals} and {@code hashCode}
+     * when probing and rebuilding.
+     */
+    private void writeConcurrentTableStorage(SourceWriter out) {
+        String hashParam = container.isEquality() ? ", int hash" : "";
+        String hashArg = container.isEquality() ? ", hash" : "";
+        out.println("    private static final class Table {");
+        out.println("        final AtomicReferenceArray<Object> slots;");
+        out.println("        final AtomicInteger used = new AtomicInteger();");
+        out.println("        final AtomicInteger size = new AtomicInteger();");
+        out.println();
+        out.println("        Table(int capacity) {");
+        out.println("            slots = new AtomicReferenceArray<>(capacity * 2);");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private static final class Frozen {");
+        out.println("        final Object value;");
+        out.println();
+        out.println("        Frozen(Object value) {");
+        out.println("            this.value = value;");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        if (container.isEquality()) {
+            out.println("    private static final class Node {");
+            out.println("        final Object key;");
+            out.println("        final int hash;");
+            out.println();
+            out.println("        Node(Object key, int hash) {");
+            out.println("            this.key = key;");
+            out.println("            this.hash = hash;");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+        }
+        out.println("    private static final Frozen FROZEN_EMPTY = new Frozen(null);");
+        out.println("    private static final Object RETRY = new Object();");
+        out.println();
+        out.print("    private volatile Table table = new Table(");
+        out.print(capacity);
+        out.println(");");
+        if (container.isEquality()) {
+            writeHash(out);
+        }
+        out.println();
+        out.print("    private static int find(AtomicReferenceArray<Object> slots, Object key");
+        out.print(hashParam);
+        out.println(") {");
+        out.println("        int mask = slots.length() - 1;");
+        if (container.isEquality()) {
+            out.println("        int i = (hash << 1) & mask;");
+            out.println("        Object k;");
+            out.println("        while ((k = slots.get(i)) != null");
+            out.println("                && (((Node)k).hash != hash");
+            out.println("                        || (((Node)k).key != key");
+            out.println("                                && !((Node)k).key.equals(key)))) {");
+        } else {
+            out.println("        int i = (System.identityHashCode(key) << 1) & mask;");
+            out.println("        Object k;");
+            out.println("        while ((k = slots.get(i)) != null && k != key) {");
+        }
+        out.println("            i = (i + 2) & mask;");
+        out.println("        }");
+        out.println("        return i;");
+        out.println("    }");
+        out.println();
+        out.println("    private static Frozen freeze(Object value) {");
+        out.println("        return value == null ? FROZEN_EMPTY : new Frozen(value);");
+        out.println("    }");
+        out.println();
+        out.println("    private static Object unfreeze(Object value) {");
+        out.println("        return value instanceof Frozen ? ((Frozen)value).value : value;");
+        out.println("    }");
+        out.println();
+        out.println("    private Object lookup(Object key) {");
+        out.println("        AtomicReferenceArray<Object> slots = table.slots;");
+        out.print("        return unfreeze(slots.get(find(slots, key");
+        out.print(container.isEquality() ? ", hash(key)" : "");
+        out.println(") + 1));");
+        out.println("    }");
+        out.println();
+        out.println("    private Object store(Object key, Object value, boolean onlyIfAbsent) {");
+        out.println("        Objects.requireNonNull(key);");
+        if (container.isEquality()) {
+            out.println("        int hash = hash(key);");
+        }
+        out.println("        while (true) {");
+        out.println("            Table tab = table;");
+        out.print("            Object previous = store(tab, key");
+        out.print(hashArg);
+        out.println(", value, onlyIfAbsent);");
+        out.println("            if (previous != RETRY) {");
+        out.println("                return previous;");
+        out.println("            }");
+        out.println("            rebuild(tab);");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.print("    private static Object store(Table tab, Object key");
+        out.print(hashParam);
+        out.println(", Object value, boolean onlyIfAbsent) {");
+        out.println("        AtomicReferenceArray<Object> slots = tab.slots;");
+        out.println("        int i;");
+        out.print("        while (slots.get(i = find(slots, key");
+        out.print(hashArg);
+        out.println(")) == null) {");
+        out.println("            if (tab.used.incrementAndGet() * 3 > slots.length()) {");
+        out.println("                tab.used.decrementAndGet();");
+        out.println("                return RETRY;");
+        out.println("            }");
+        out.print("            if (slots.compareAndSet(i, null, ");
+        out.print(container.isEquality() ? "new Node(key, hash)" : "key");
+        out.println(")) {");
+        out.println("                break;");
+        out.println("            }");
+        out.println("            tab.used.decrementAndGet();");
+        out.println("        }");
+        out.println("        while (true) {");
+        out.println("            Object previous = slots.get(i + 1);");
+        out.println("            if (previous instanceof Frozen) {");
+        out.println("                return RETRY;");
+        out.println("            }");
+        out.println("            if (previous != null && (onlyIfAbsent || previous == value)) {");
+        out.println("                return previous;");
+        out.println("            }");
+        out.println("            if (slots.compareAndSet(i + 1, previous, value)) {");
+        out.println("                if (previous == null) {");
+        out.println("                    tab.size.incrementAndGet();");
+        out.println("                }");
+        out.println("                return previous;");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private Object delete(Object key) {");
+        if (container.isEquality()) {
+            out.println("        int hash = hash(key);");
+        }
+        out.println("        while (true) {");
+        out.println("            Table tab = table;");
+        out.println("            AtomicReferenceArray<Object> slots = tab.slots;");
+        out.print("            int i = find(slots, key");
+        out.print(hashArg);
+        out.println(");");
+        out.println("            Object previous = slots.get(i + 1);");
+        out.println("            if (previous instanceof Frozen) {");
+        out.println("                rebuild(tab);");
+        out.println("            } else if (previous == null) {");
+        out.println("                return null;");
+        out.println("            } else if (slots.compareAndSet(i + 1, previous, null)) {");
+        out.println("                tab.size.decrementAndGet();");
+        out.println("                return previous;");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private synchronized void rebuild(Table tab) {");
+        out.println("        if (table != tab) {");
+        out.println("            return;");
+        out.println("        }");
+        out.println("        AtomicReferenceArray<Object> slots = tab.slots;");
+        out.println("        int size = 0;");
+        out.println("        for (int i = 0; i < slots.length(); i += 2) {");
+        out.println("            Object value;");
+        out.println("            do {");
+        out.println("                value = slots.get(i + 1);");
+        out.println("            } while (!slots.compareAndSet(i + 1, value, freeze(value)));");
+        out.println("            if (value != null) {");
+        out.println("                size++;");
+        out.println("            }");
+        out.println("        }");
+        out.print("        int capacity = ");
+        out.print(capacity);
+        out.println(";");
+        out.println("        while (size * 3 > capacity) {");
+        out.println("            capacity <<= 1;");
+        out.println("        }");
+        out.println("        Table newTab = new Table(capacity);");
+        out.println("        AtomicReferenceArray<Object> newSlots = newTab.slots;");
+        out.println("        for (int i = 0; i < slots.length(); i += 2) {");
+        out.println("            Object value = ((Frozen)slots.get(i + 1)).value;");
+        out.println("            if (value != null) {");
+        out.println("                Object k = slots.get(i);");
+        if (container.isEquality()) {
+            out.println("                int j = find(newSlots, ((Node)k).key, ((Node)k).hash);");
+        } else {
+            out.println("                int j = find(newSlots, k);");
+        }
+        out.println("                newSlots.set(j, k);");
+        out.println("                newSlots.set(j + 1, value);");
+        out.println("            }");
+        out.println("        }");
+        out.println("        newTab.used.set(size);");
+        out.println("        newTab.size.set(size);");
+        out.println("        table = newTab;");
+        out.println("    }");
+        out.println();
+        out.println("    private int count() {");
+        out.println("        return table.size.get();");
+        out.println("    }");
+        out.println();
+        out.println("    private void visit(Visitor visitor) {");
+        out.println("        AtomicReferenceArray<Object> slots = table.slots;");
+        out.println("        for (int i = 0; i < slots.length(); i += 2) {");
+        out.println("            Object value = unfreeze(slots.get(i + 1));");
+        out.println("            if (value != null) {");
+        out.print("                accept(visitor, ");
+        out.print(container.isEquality() ? "((Node)slots.get(i)).key" : "slots.get(i)");
+        out.println(", value);");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /**
+     * Writes the storage for non thread safe containers with arbitrary keys. The entries are stored
+     * in an open addressing identity table with linear probing, using parallel arrays for keys and
+     * values. The table is presized based on the expected size specified in the annotation.
+     */
+    private void writeOpenAddressingStorage(SourceWriter out) {
+        out.print("    private Object[] keys = new Object[");
+        out.print(capacity);
+        out.println("];");
+        out.print("    private Object[] values = new Object[");
+        out.print(capacity);
+        out.println("];");
+        out.println("    private int size;");
+        out.println();
+        out.println("    private static int find(Object[] keys, Object key) {");
+        out.println("        int mask = keys.length - 1;");
+        out.println("        int i = System.identityHashCode(key) & mask;");
+        out.println("        Object k;");
+        out.println("        while ((k = keys[i]) != null && k != key) {");
+        out.println("            i = (i + 1) & mask;");
+        out.println("        }");
+        out.println("        return i;");
+        out.println("    }");
+        out.println();
+        out.println("    private Object lookup(Object key) {");
+        out.println("        return values[find(keys, key)];");
+        out.println("    }");
+        out.println();
+        out.println("    private Object store(Object key, Object value, boolean onlyIfAbsent) {");
+        out.println("        Objects.requireNonNull(key);");
+        out.println("        int i = find(keys, key);");
+        out.println("        if (keys[i] == null) {");
+        out.println("            if (++size * 3 > keys.length * 2) {");
+        out.println("                resize();");
+        out.println("                i = find(keys, key);");
+        out.println("            }");
+        out.println("            keys[i] = key;");
+        out.println("            values[i] = value;");
+        out.println("            return null;");
+        out.println("        }");
+        out.println("        Object previous = values[i];");
+        out.println("        if (previous == null || !onlyIfAbsent) {");
+        out.println("            values[i] = value;");
+        out.println("        }");
+        out.println("        return previous;");
+        out.println("    }");
+        out.println();
+        out.println("    private void resize() {");
+        out.println("        Object[] oldKeys = keys;");
+        out.println("        Object[] oldValues = values;");
+        out.println("        keys = new Object[oldKeys.length * 2];");
+        out.println("        values = new Object[oldKeys.length * 2];");
+        out.println("        for (int j = 0; j < oldKeys.length; j++) {");
+        out.println("            if (oldKeys[j] != null) {");
+        out.println("                int i = find(keys, oldKeys[j]);");
+        out.println("                keys[i] = oldKeys[j];");
+        out.println("                values[i] = oldValues[j];");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private Object delete(Object key) {");
+        out.println("        int i = find(keys, key);");
+        out.println("        if (keys[i] == null) {");
+        out.println("            return null;");
+        out.println("        }");
+        out.println("        Object previous = values[i];");
+        out.println("        size--;");
+        out.println("        int mask = keys.length - 1;");
+        out.println("        int j = i;");
+        out.println("        while (true) {");
+        out.println("            j = (j + 1) & mask;");
+        out.println("            Object k = keys[j];");
+        out.println("            if (k == null) {");
+        out.println("                break;");
+        out.println("            }");
+        out.println("            int home = System.identityHashCode(k) & mask;");
+        out.println("            if (j > i ? home <= i || home > j : home <= i && home > j) {");
+        out.println("                keys[i] = k;");
+        out.println("                values[i] = values[j];");
+        out.println("                i = j;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        keys[i] = null;");
+        out.println("        values[i] = null;");
+        out.println("        return previous;");
+        out.println("    }");
+        out.println();
+        out.println("    private int count() {");
+        out.println("        return size;");
+        out.println("    }");
+        out.println();
+        out.println("    private void visit(Visitor visitor) {");
+        out.println("        for (int i = 0; i < keys.length; i++) {");
+        out.println("            if (keys[i] != null) {");
+        out.println("                accept(visitor, keys[i], values[i]);");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /**
+     * Writes the method that computes the hash code stored in the table for a key. The high bits
+     * are folded into the low bits because the table index only uses the latter.
+     */
+    private static void writeHash(SourceWriter out) {
+        out.println();
+        out.println("    private static int hash(Object key) {");
+        out.println("        int h = Objects.hashCode(key);");
+        out.println("        return h ^ (h >>> 16);");
+        out.println("    }");
+    }
+
+    /**
+     * Writes the storage for non thread safe equality-keyed containers. This is the same as {@link
+     * #writeOpenAddressingStorage(SourceWriter)}, except that keys are compared with {@code equals}
+     * and that a third parallel array stores the hash codes of the keys. The stored hash codes are
+     * compared before invoking {@code equals} and are used when rehashing.
+     */
+    private void writeEqualityStorage(SourceWriter out) {
+        out.print("    private Object[] keys = new Object[");
+        out.print(capacity);
+        out.println("];");
+        out.print("    private Object[] values = new Object[");
+        out.print(capacity);
+        out.println("];");
+        out.print("    private int[] hashes = new int[");
+        out.print(capacity);
+        out.println("];");
+        out.println("    private int size;");
+        writeHash(out);
+        out.println();
+        out.print("    private static int find(");
+        out.println("Object[] keys, int[] hashes, Object key, int hash) {");
+        out.println("        int mask = keys.length - 1;");
+        out.println("        int i = hash & mask;");
+        out.println("        Object k;");
+        out.println("        while ((k = keys[i]) != null");
+        out.println("                && k != key");
+        out.println("                && (hashes[i] != hash || !k.equals(key))) {");
+        out.println("            i = (i + 1) & mask;");
+        out.println("        }");
+        out.println("        return i;");
+        out.println("    }");
+        out.println();
+        out.println("    private Object lookup(Object key) {");
+        out.println("        return values[find(keys, hashes, key, hash(key))];");
+        out.println("    }");
+        out.println();
+        out.println("    private Object store(Object key, Object value, boolean onlyIfAbsent) {");
+        out.println("        Objects.requireNonNull(key);");
+        out.println("        int hash = hash(key);");
+        out.println("        int i = find(keys, hashes, key, hash);");
+        out.println("        if (keys[i] == null) {");
+        out.println("            if (++size * 3 > keys.length * 2) {");
+        out.println("                resize();");
+        out.println("                i = find(keys, hashes, key, hash);");
+        out.println("            }");
+        out.println("            keys[i] = key;");
+        out.println("            values[i] = value;");
+        out.println("            hashes[i] = hash;");
+        out.println("            return null;");
+        out.println("        }");
+        out.println("        Object previous = values[i];");
+        out.println("        if (previous == null || !onlyIfAbsent) {");
+        out.println("            values[i] = value;");
+        out.println("        }");
+        out.println("        return previous;");
+        out.println("    }");
+        out.println();
+        out.println("    private void resize() {");
+        out.println("        Object[] oldKeys = keys;");
+        out.println("        Object[] oldValues = values;");
+        out.println("        int[] oldHashes = hashes;");
+        out.println("        keys = new Object[oldKeys.length * 2];");
+        out.println("        values = new Object[oldKeys.length * 2];");
+        out.println("        hashes = new int[oldKeys.length * 2];");
+        out.println("        for (int j = 0; j < oldKeys.length; j++) {");
+        out.println("            if (oldKeys[j] != null) {");
+        out.println("                int i = find(keys, hashes, oldKeys[j], oldHashes[j]);");
+        out.println("                keys[i] = oldKeys[j];");
+        out.println("                values[i] = oldValues[j];");
+        out.println("                hashes[i] = oldHashes[j];");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private Object delete(Object key) {");
+        out.println("        int i = find(keys, hashes, key, hash(key));");
+        out.println("        if (keys[i] == null) {");
+        out.println("            return null;");
+        out.println("        }");
+        out.println("        Object previous = values[i];");
+        out.println("        size--;");
+        out.println("        int mask = keys.length - 1;");
+        out.println("        int j = i;");
+        out.println("        while (true) {");
+        out.println("            j = (j + 1) & mask;");
+        out.println("            Object k = keys[j];");
+        out.println("            if (k == null) {");
+        out.println("                break;");
+        out.println("            }");
+        out.println("            int home = hashes[j] & mask;");
+        out.println("            if (j > i ? home <= i || home > j : home <= i && home > j) {");
+        out.println("                keys[i] = k;");
+        out.println("                values[i] = values[j];");
+        out.println("                hashes[i] = hashes[j];");
+        out.println("                i = j;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        keys[i] = null;");
+        out.println("        values[i] = null;");
+        out.println("        return previous;");
+        out.println("    }");
+        out.println();
+        out.println("    private int count() {");
+        out.println("        return size;");
+        out.println("    }");
+        out.println();
+        out.println("    private void visit(Visitor visitor) {");
+        out.println("        for (int i = 0; i < keys.length; i++) {");
+        out.println("            if (keys[i] != null) {");
+        out.println("                accept(visitor, keys[i], values[i]);");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /**
+     * Writes the storage for containers with weak keys. The entries are weak references to the
+     * keys, chained in an identity hash table. Entries whose key has been garbage collected are
+     * removed when they are polled from the reference queue, which is done at the beginning of
+     * every operation so that no background thread is needed.
+     */
+    private void writeWeakKeyStorage(SourceWriter out) {
+        String sync = container.isConcurrent() ? "synchronized " : "";
+        out.println("    private static final class WeakKey extends WeakReference<Object> {");
+        out.println("        final int hash;");
+        out.println("        Object value;");
+        out.println("        WeakKey next;");
+        out.println();
+        out.println("        WeakKey(Object key, int hash, Object value,");
+        out.println("                ReferenceQueue<Object> queue, WeakKey next) {");
+        out.println("            super(key, queue);");
+        out.println("            this.hash = hash;");
+        out.println("            this.value = value;");
+        out.println("            this.next = next;");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();");
+        out.print("    private WeakKey[] table = new WeakKey[");
+        out.print(capacity);
+        out.println("];");
+        out.println("    private int size;");
+        out.println();
+        out.println("    private void expungeStaleEntries() {");
+        out.println("        Reference<?> ref;");
+        out.println("        while ((ref = queue.poll()) != null) {");
+        out.println("            WeakKey stale = (WeakKey)ref;");
+        out.println("            int i = stale.hash & (table.length - 1);");
+        out.println("            WeakKey prev = null;");
+        out.println("            for (WeakKey e = table[i]; e != null; prev = e, e = e.next) {");
+        out.println("                if (e == stale) {");
+        out.println("                    if (prev == null) {");
+        out.println("                        table[i] = e.next;");
+        out.println("                    } else {");
+        out.println("                        prev.next = e.next;");
+        out.println("                    }");
+        out.println("                    e.value = null;");
+        out.println("                    size--;");
+        out.println("                    break;");
+        out.println("                }");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("Object lookup(Object key) {");
+        out.println("        expungeStaleEntries();");
+        out.println("        if (key == null) {");
+        out.println("            return null;");
+        out.println("        }");
+        out.println("        int hash = System.identityHashCode(key);");
+        out.println("        WeakKey e = table[hash & (table.length - 1)];");
+        out.println("        for (; e != null; e = e.next) {");
+        out.println("            if (e.hash == hash && e.get() == key) {");
+        out.println("                return e.value;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        return null;");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("Object store(Object key, Object value, boolean onlyIfAbsent) {");
+        out.println("        Objects.requireNonNull(key);");
+        out.println("        expungeStaleEntries();");
+        out.println("        int hash = System.identityHashCode(key);");
+        out.println("        int i = hash & (table.length - 1);");
+        out.println("        for (WeakKey e = table[i]; e != null; e = e.next) {");
+        out.println("            if (e.hash == hash && e.get() == key) {");
+        out.println("                Object previous = e.value;");
+        out.println("                if (previous == null || !onlyIfAbsent) {");
+        out.println("                    e.value = value;");
+        out.println("                }");
+        out.println("                return previous;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        if (++size * 3 > table.length * 2) {");
+        out.println("            resize();");
+        out.println("            i = hash & (table.length - 1);");
+        out.println("        }");
+        out.println("        table[i] = new WeakKey(key, hash, value, queue, table[i]);");
+        out.println("        return null;");
+        out.println("    }");
+        out.println();
+        out.println("    private void resize() {");
+        out.println("        WeakKey[] oldTable = table;");
+        out.println("        table = new WeakKey[oldTable.length * 2];");
+        out.println("        for (WeakKey e : oldTable) {");
+        out.println("            while (e != null) {");
+        out.println("                WeakKey next = e.next;");
+        out.println("                int i = e.hash & (table.length - 1);");
+        out.println("                e.next = table[i];");
+        out.println("                table[i] = e;");
+        out.println("                e = next;");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("Object delete(Object key) {");
+        out.println("        expungeStaleEntries();");
+        out.println("        if (key == null) {");
+        out.println("            return null;");
+        out.println("        }");
+        out.println("        int hash = System.identityHashCode(key);");
+        out.println("        int i = hash & (table.length - 1);");
+        out.println("        WeakKey prev = null;");
+        out.println("        for (WeakKey e = table[i]; e != null; prev = e, e = e.next) {");
+        out.println("            if (e.hash == hash && e.get() == key) {");
+        out.println("                if (prev == null) {");
+        out.println("                    table[i] = e.next;");
+        out.println("                } else {");
+        out.println("                    prev.next = e.next;");
+        out.println("                }");
+        out.println("                // Clearing the reference prevents it from being enqueued.");
+        out.println("                e.clear();");
+        out.println("                size--;");
+        out.println("                return e.value;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        return null;");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("int count() {");
+        out.println("        expungeStaleEntries();");
+        out.println("        return size;");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("void visit(Visitor visitor) {");
+        out.println("        expungeStaleEntries();");
+        out.println("        for (WeakKey e : table) {");
+        out.println("            for (; e != null; e = e.next) {");
+        out.println("                Object key = e.get();");
+        out.println("                if (key != null) {");
+        out.println("                    accept(visitor, key, e.value);");
+        out.println("                }");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /**
+     * Writes the storage for bounded containers. The entries are stored in dense arrays of {@code
+     * maximumSize} slots, and an open addressing table with linear probing maps the identity hash
+     * codes of the keys to slot numbers. When the container is full, the slot selected by the
+     * eviction policy is reused for the new entry. For LRU, the slots are linked in a doubly linked
+     * list ordered by recency; for CLOCK, each slot has a reference bit.
+     */
+    private void writeBoundedStorage(SourceWriter out) {
+        String sync = container.isConcurrent() ? "synchronized " : "";
+        out.print("    private final Object[] keys = new Object[");
+        out.print(container.getMaximumSize());
+        out.println("];");
+        out.print("    private final Object[] values = new Object[");
+        out.print(container.getMaximumSize());
+        out.println("];");
+        out.print("    private final int[] hashes = new int[");
+        out.print(container.getMaximumSize());
+        out.println("];");
+        out.print("    private final int[] index = new int[");
+        out.print(capacity(container.getMaximumSize()));
+        out.println("];");
+        out.println("    private int size;");
+        if (container.isClock()) {
+            out.print("    private final boolean[] referenced = new boolean[");
+            out.print(container.getMaximumSize());
+            out.println("];");
+            out.println("    private int hand;");
+        } else {
+            out.print("    private final int[] prev = new int[");
+            out.print(container.getMaximumSize());
+            out.println("];");
+            out.print("    private final int[] next = new int[");
+            out.print(container.getMaximumSize());
+            out.println("];");
+            out.println("    private int head = -1;");
+            out.println("    private int tail = -1;");
+        }
+        out.println();
+        out.println("    /**");
+        out.println("     * Returns the position in the index of the given key, or of the empty");
+        out.println("     * position where it would be inserted.");
+        out.println("     */");
+        out.println("    private int find(Object key, int hash) {");
+        out.println("        int mask = index.length - 1;");
+        out.println("        int i = hash & mask;");
+        out.println("        int slot;");
+        out.println("        while ((slot = index[i]) != 0 && keys[slot - 1] != key) {");
+        out.println("            i = (i + 1) & mask;");
+        out.println("        }");
+        out.println("        return i;");
+        out.println("    }");
+        out.println();
+        out.println("    private void removeFromIndex(int i) {");
+        out.println("        int mask = index.length - 1;");
+        out.println("        int j = i;");
+        out.println("        while (true) {");
+        out.println("            j = (j + 1) & mask;");
+        out.println("            int slot = index[j];");
+        out.println("            if (slot == 0) {");
+        out.println("                break;");
+        out.println("            }");
+        out.println("            int home = hashes[slot - 1] & mask;");
+        out.println("            if (j > i ? home <= i || home > j : home <= i && home > j) {");
+        out.println("                index[i] = slot;");
+        out.println("                i = j;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        index[i] = 0;");
+        out.println("    }");
+        out.println();
+        if (container.isClock()) {
+            out.println("    private void touch(int slot) {");
+            out.println("        referenced[slot] = true;");
+            out.println("    }");
+            out.println();
+            out.println("    private int evict() {");
+            out.println("        while (referenced[hand]) {");
+            out.println("            referenced[hand] = false;");
+            out.println("            if (++hand == keys.length) {");
+            out.println("                hand = 0;");
+            out.println("            }");
+            out.println("        }");
+            out.println("        int slot = hand;");
+            out.println("        if (++hand == keys.length) {");
+            out.println("            hand = 0;");
+            out.println("        }");
+            out.println("        return slot;");
+            out.println("    }");
+        } else {
+            out.println("    private void linkFirst(int slot) {");
+            out.println("        prev[slot] = -1;");
+            out.println("        next[slot] = head;");
+            out.println("        if (head == -1) {");
+            out.println("            tail = slot;");
+            out.println("        } else {");
+            out.println("            prev[head] = slot;");
+            out.println("        }");
+            out.println("        head = slot;");
+            out.println("    }");
+            out.println();
+            out.println("    private void unlink(int slot) {");
+            out.println("        int p = prev[slot];");
+            out.println("        int n = next[slot];");
+            out.println("        if (p == -1) {");
+            out.println("            head = n;");
+            out.println("        } else {");
+            out.println("            next[p] = n;");
+            out.println("        }");
+            out.println("        if (n == -1) {");
+            out.println("            tail = p;");
+            out.println("        } else {");
+            out.println("            prev[n] = p;");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+            out.println("    private void touch(int slot) {");
+            out.println("        if (slot != head) {");
+            out.println("            unlink(slot);");
+            out.println("            linkFirst(slot);");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+            out.println("    private int evict() {");
+            out.println("        int slot = tail;");
+            out.println("        touch(slot);");
+            out.println("        return slot;");
+            out.println("    }");
+        }
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("Object peek(Object key) {");
+        out.println("        int slot = index[find(key, System.identityHashCode(key))] - 1;");
+        out.println("        return slot < 0 ? null : values[slot];");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("Object lookup(Object key) {");
+        out.println("        int slot = index[find(key, System.identityHashCode(key))] - 1;");
+        out.println("        if (slot < 0) {");
+        out.println("            return null;");
+        out.println("        }");
+        out.println("        touch(slot);");
+        out.println("        return values[slot];");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("Object store(Object key, Object value, boolean onlyIfAbsent) {");
+        out.println("        Objects.requireNonNull(key);");
+        out.println("        int hash = System.identityHashCode(key);");
+        out.println("        int i = find(key, hash);");
+        out.println("        int slot = index[i] - 1;");
+        out.println("        if (slot >= 0) {");
+        out.println("            touch(slot);");
+        out.println("            Object previous = values[slot];");
+        out.println("            if (previous == null || !onlyIfAbsent) {");
+        out.println("                values[slot] = value;");
+        out.println("            }");
+        out.println("            return previous;");
+        out.println("        }");
+        out.println("        if (size < keys.length) {");
+        out.println("            slot = size++;");
+        if (!container.isClock()) {
+            out.println("            linkFirst(slot);");
+        }
+        out.println("        } else {");
+        out.println("            slot = evict();");
+        out.println("            removeFromIndex(find(keys[slot], hashes[slot]));");
+        out.println("            i = find(key, hash);");
+        out.println("        }");
+        out.println("        keys[slot] = key;");
+        out.println("        values[slot] = value;");
+        out.println("        hashes[slot] = hash;");
+        out.println("        index[i] = slot + 1;");
+        out.println("        return null;");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("Object delete(Object key) {");
+        out.println("        int i = find(key, System.identityHashCode(key));");
+        out.println("        int slot = index[i] - 1;");
+        out.println("        if (slot < 0) {");
+        out.println("            return null;");
+        out.println("        }");
+        out.println("        Object previous = values[slot];");
+        out.println("        removeFromIndex(i);");
+        if (!container.isClock()) {
+            out.println("        unlink(slot);");
+        }
+        out.println("        // Move the last entry into the free slot to keep the slots dense.");
+        out.println("        int last = --size;");
+        out.println("        if (slot != last) {");
+        out.println("            keys[slot] = keys[last];");
+        out.println("            values[slot] = values[last];");
+        out.println("            hashes[slot] = hashes[last];");
+        out.println("            index[find(keys[last], hashes[last])] = slot + 1;");
+        if (container.isClock()) {
+            out.println("            referenced[slot] = referenced[last];");
+        } else {
+            out.println("            int p = prev[last];");
+            out.println("            int n = next[last];");
+            out.println("            prev[slot] = p;");
+            out.println("            next[slot] = n;");
+            out.println("            if (p == -1) {");
+            out.println("                head = slot;");
+            out.println("            } else {");
+            out.println("                next[p] = slot;");
+            out.println("            }");
+            out.println("            if (n == -1) {");
+            out.println("                tail = slot;");
+            out.println("            } else {");
+            out.println("                prev[n] = slot;");
+            out.println("            }");
+        }
+        out.println("        }");
+        out.println("        keys[last] = null;");
+        out.println("        values[last] = null;");
+        if (container.isClock()) {
+            out.println("        referenced[last] = false;");
+        }
+        out.println("        return previous;");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("int count() {");
+        out.println("        return size;");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(sync);
+        out.println("void visit(Visitor visitor) {");
+        out.println("        for (int slot = 0; slot < size; slot++) {");
+        out.println("            accept(visitor, keys[slot], values[slot]);");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /**
+     * Writes the storage for scoped containers. Entries are kept in an immutable linked list, most
+     * recently added first. Replacing or removing an entry copies the nodes that precede it and
+     * shares the remaining ones. The binding to the current thread uses a {@code ScopedValue} if
+     * available, and a {@link ThreadLocal} otherwise; in both cases a binding only references the
+     * (immutable) context.
+     */
+    private void writeScopedStorage(SourceWriter out) {
+        out.println("    private static final class Node {");
+        out.println("        final Object key;");
+        out.println("        final Object value;");
+        out.println("        final Node next;");
+        out.println();
+        out.println("        Node(Object key, Object value, Node next) {");
+        out.println("            this.key = key;");
+        out.println("            this.value = value;");
+        out.println("            this.next = next;");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.print("    private static final ");
+        out.print(container.getClassName());
+        out.print(" EMPTY = new ");
+        out.print(container.getClassName());
+        out.println("(null, 0);");
+        out.println();
+        if (container.isScopedValues()) {
+            out.print("    private static final ScopedValue<");
+            out.print(container.getClassName());
+            out.println("> CURRENT = ScopedValue.newInstance();");
+        } else {
+            out.print("    private static final ThreadLocal<");
+            out.print(container.getClassName());
+            out.println("> CURRENT = new ThreadLocal<>();");
+        }
+        out.println();
+        out.println("    private final Node head;");
+        out.println("    private final int size;");
+        out.println();
+        out.print("    private ");
+        out.print(container.getClassName());
+        out.println("(Node head, int size) {");
+        out.println("        this.head = head;");
+        out.println("        this.size = size;");
+        out.println("    }");
+        out.println();
+        out.print("    ");
+        out.print(commonModifiers);
+        out.print("static ");
+        out.print(container.getClassName());
+        out.println(" empty() {");
+        out.println("        return EMPTY;");
+        out.println("    }");
+        out.println();
+        out.print("    ");
+        out.print(commonModifiers);
+        out.print("static ");
+        out.print(container.getClassName());
+        out.println(" current() {");
+        if (container.isScopedValues()) {
+            out.println("        return CURRENT.orElse(EMPTY);");
+        } else {
+            out.print("        ");
+            out.print(container.getClassName());
+            out.println(" context = CURRENT.get();");
+            out.println("        return context == null ? EMPTY : context;");
+        }
+        out.println("    }");
+        out.println();
+        out.print("    ");
+        out.print(commonModifiers);
+        out.println("void run(Runnable task) {");
+        if (container.isScopedValues()) {
+            out.println("        ScopedValue.where(CURRENT, this).run(task);");
+        } else {
+            printBinding(out, "task.run();");
+        }
+        out.println("    }");
+        out.println();
+        out.print("    ");
+        out.print(commonModifiers);
+        out.println("<R> R call(java.util.function.Supplier<? extends R> task) {");
+        if (container.isScopedValues()) {
+            out.println("        return ScopedValue.where(CURRENT, this).call(task::get);");
+        } else {
+            printBinding(out, "return task.get();");
+        }
+        out.println("    }");
+        out.println();
+        out.println("    private Object lookup(Object key) {");
+        out.println("        for (Node node = head; node != null; node = node.next) {");
+        out.println("            if (node.key == key) {");
+        out.println("                return node.value;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        return null;");
+        out.println("    }");
+        out.println();
+        out.print("    private ");
+        out.print(container.getClassName());
+        out.println(" update(Object key, Object value) {");
+        out.println("        Objects.requireNonNull(key);");
+        out.println("        Node node = head;");
+        out.println("        int index = 0;");
+        out.println("        while (node != null && node.key != key) {");
+        out.println("            node = node.next;");
+        out.println("            index++;");
+        out.println("        }");
+        out.println("        if (node == null) {");
+        out.println("            if (value == null) {");
+        out.println("                return this;");
+        out.println("            }");
+        out.print("            return new ");
+        out.print(container.getClassName());
+        out.println("(new Node(key, value, head), size + 1);");
+        out.println("        }");
+        out.println("        if (node.value == value) {");
+        out.println("            return this;");
+        out.println("        }");
+        out.println("        Node newHead =");
+        out.println("                value == null ? node.next : new Node(key, value, node.next);");
+        out.println("        Node[] prefix = new Node[index];");
+        out.println("        node = head;");
+        out.println("        for (int i = 0; i < index; i++) {");
+        out.println("            prefix[i] = node;");
+        out.println("            node = node.next;");
+        out.println("        }");
+        out.println("        for (int i = index - 1; i >= 0; i--) {");
+        out.println("            newHead = new Node(prefix[i].key, prefix[i].value, newHead);");
+        out.println("        }");
+        out.print("        return new ");
+        out.print(container.getClassName());
+        out.println("(newHead, value == null ? size - 1 : size);");
+        out.println("    }");
+        out.println();
+        out.println("    private int count() {");
+        out.println("        return size;");
+        out.println("    }");
+        out.println();
+        out.println("    private void visit(Visitor visitor) {");
+        out.println("        for (Node node = head; node != null; node = node.next) {");
+        out.println("            accept(visitor, node.key, node.value);");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /**
+     * Prints the code that binds the context to the current thread using the {@link ThreadLocal}
+     * while the given statement is executed, and then restores the previous binding.
+     */
+    private void printBinding(SourceWriter out, String statement) {
+        out.print("        ");
+        out.print(container.getClassName());
+        out.println(" previous = CURRENT.get();");
+        out.println("        CURRENT.set(this);");
+        out.println("        try {");
+        out.print("            ");
+        out.println(statement);
+        out.println("        } finally {");
+        out.println("            if (previous == null) {");
+        out.println("                CURRENT.remove();");
+        out.println("            } else {");
+        out.println("                CURRENT.set(previous);");
+        out.println("            }");
+        out.println("        }");
+    }
+
+    /**
+     * Writes the storage and builder for frozen containers. The builder computes a perfect hash
+     * function for the identity hash codes of the keys (using the "hash and displace" approach:
+     * keys are distributed into buckets and a multiplier is selected for each bucket so that there
+     * are no collisions). A lookup then always needs a single probe. Keys with the same identity
+     * hash code as another key can't be handled that way; they are stored in a separate overflow
+     * area that is searched linearly.
+     */
+    private void writeFrozenStorage(SourceWriter out) {
+        out.println("    private final Object[] keys;");
+        out.println("    private final Object[] values;");
+        out.println("    private final int[] seeds;");
+        out.println("    private final int bucketShift;");
+        out.println("    private final int shift;");
+        out.println("    private final Object[] overflowKeys;");
+        out.println("    private final Object[] overflowValues;");
+        out.println("    private final int size;");
+        out.println();
+        out.print("    private ");
+        out.print(container.getClassName());
+        out.println("(");
+        out.println("            Object[] keys,");
+        out.println("            Object[] values,");
+        out.println("            int[] seeds,");
+        out.println("            int bucketShift,");
+        out.println("            int shift,");
+        out.println("            Object[] overflowKeys,");
+        out.println("            Object[] overflowValues) {");
+        out.println("        this.keys = keys;");
+        out.println("        this.values = values;");
+        out.println("        this.seeds = seeds;");
+        out.println("        this.bucketShift = bucketShift;");
+        out.println("        this.shift = shift;");
+        out.println("        this.overflowKeys = overflowKeys;");
+        out.println("        this.overflowValues = overflowValues;");
+        out.println("        int size = 0;");
+        out.println("        for (Object value : values) {");
+        out.println("            if (value != null) {");
+        out.println("                size++;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        for (Object value : overflowValues) {");
+        out.println("            if (value != null) {");
+        out.println("                size++;");
+        out.println("            }");
+        out.println("        }");
+        out.println("        this.size = size;");
+        out.println("    }");
+        out.println();
+        out.print("    ");
+        out.print(commonModifiers);
+        out.println("static Builder builder() {");
+        out.println("        return new Builder();");
+        out.println("    }");
+        out.println();
+        out.print("    ");
+        out.print(commonModifiers);
+        out.println("static final class Builder {");
+        out.println("        private final List<Object> keys = new ArrayList<>();");
+        out.println("        private final List<Object> values = new ArrayList<>();");
+        out.println();
+        out.println("        private Builder() {}");
+        out.println();
+        out.print("        ");
+        out.print(commonModifiers);
+        out.print("Builder add(");
+        out.print(container.getEntryType());
+        out.println(" entry) {");
+        out.println("            keys.add(Objects.requireNonNull(entry.getKey()));");
+        out.println("            values.add(entry.getValue());");
+        out.println("            return this;");
+        out.println("        }");
+        out.println();
+        out.print("        ");
+        out.print(commonModifiers);
+        out.print("Builder addAll(Iterable<? extends ");
+        out.print(container.getEntryType());
+        out.println("> entries) {");
+        out.print("            for (");
+        out.print(container.getEntryType());
+        out.println(" entry : entries) {");
+        out.println("                add(entry);");
+        out.println("            }");
+        out.println("            return this;");
+        out.println("        }");
+        out.println();
+        out.print("        ");
+        out.print(commonModifiers);
+        out.print(container.getClassName());
+        out.println(" build() {");
+        out.println("            Map<Object, Boolean> seen = new IdentityHashMap<>();");
+        out.println("            Set<Integer> hashCodeSet = new HashSet<>();");
+        out.println("            List<Object> tableKeys = new ArrayList<>();");
+        out.println("            List<Object> tableValues = new ArrayList<>();");
+        out.println("            List<Object> overflowKeys = new ArrayList<>();");
+        out.println("            List<Object> overflowValues = new ArrayList<>();");
+        out.println("            for (int j = 0; j < keys.size(); j++) {");
+        out.println("                Object key = keys.get(j);");
+        out.println("                if (seen.put(key, Boolean.TRUE) != null) {");
+        out.println("                    throw new IllegalArgumentException(");
+        out.println("                            \"Duplicate key \" + key);");
+        out.println("                }");
+        out.println(
+                "                // Keys with the same identity hash code can't be separated by");
+        out.println("                // the hash function.");
+        out.println("                if (hashCodeSet.add(System.identityHashCode(key))) {");
+        out.println("                    tableKeys.add(key);");
+        out.println("                    tableValues.add(values.get(j));");
+        out.println("                } else {");
+        out.println("                    overflowKeys.add(key);");
+        out.println("                    overflowValues.add(values.get(j));");
+        out.println("                }");
+        out.println("            }");
+        out.println("            int size = tableKeys.size();");
+        out.println("            int[] hashCodes = new int[size];");
+        out.println("            for (int j = 0; j < size; j++) {");
+        out.println("                hashCodes[j] = System.identityHashCode(tableKeys.get(j));");
+        out.println("            }");
+        out.println("            int bucketBits = 31 - Integer.numberOfLeadingZeros(size);");
+        out.println("            int bucketShift = 32 - Math.max(1, bucketBits);");
+        out.println("            int[][] buckets = new int[1 << (32 - bucketShift)][];");
+        out.println("            int[] bucketSizes = new int[buckets.length];");
+        out.println("            for (int j = 0; j < size; j++) {");
+        out.println("                bucketSizes[bucket(hashCodes[j], bucketShift)]++;");
+        out.println("            }");
+        out.println("            Integer[] order = new Integer[buckets.length];");
+        out.println("            for (int b = 0; b < buckets.length; b++) {");
+        out.println("                buckets[b] = new int[bucketSizes[b]];");
+        out.println("                bucketSizes[b] = 0;");
+        out.println("                order[b] = b;");
+        out.println("            }");
+        out.println("            for (int j = 0; j < size; j++) {");
+        out.println("                int b = bucket(hashCodes[j], bucketShift);");
+        out.println("                buckets[b][bucketSizes[b]++] = j;");
+        out.println("            }");
+        out.println(
+                "            // Place the largest buckets first, while the table is still empty.");
+        out.println("            Arrays.sort(");
+        out.println(
+                "                    order, (b1, b2) -> buckets[b2].length - buckets[b1].length);");
+        out.println("            int tableBits =");
+        out.println(
+                "                    33 - Integer.numberOfLeadingZeros(Math.max(size - 1, 0));");
+        out.println("            while (true) {");
+        out.println("                int shift = 32 - tableBits;");
+        out.println("                Object[] keys = new Object[1 << tableBits];");
+        out.println("                Object[] values = new Object[1 << tableBits];");
+        out.println("                int[] seeds = new int[buckets.length];");
+        out.println("                SplittableRandom random = new SplittableRandom(tableBits);");
+        out.println("                nextBucket:");
+        out.println("                for (int b : order) {");
+        out.println("                    int[] bucket = buckets[b];");
+        out.println("                    nextSeed:");
+        out.println("                    for (int attempt = 0; attempt < 1024; attempt++) {");
+        out.println("                        int seed = random.nextInt() | 1;");
+        out.println("                        for (int j = 0; j < bucket.length; j++) {");
+        out.println("                            int i = (hashCodes[bucket[j]] * seed) >>> shift;");
+        out.println("                            if (keys[i] != null) {");
+        out.println("                                for (int k = 0; k < j; k++) {");
+        out.println(
+                "                                    i = (hashCodes[bucket[k]] * seed) >>> shift;");
+        out.println("                                    keys[i] = null;");
+        out.println("                                    values[i] = null;");
+        out.println("                                }");
+        out.println("                                continue nextSeed;");
+        out.println("                            }");
+        out.println("                            keys[i] = tableKeys.get(bucket[j]);");
+        out.println("                            values[i] = tableValues.get(bucket[j]);");
+        out.println("                        }");
+        out.println("                        seeds[b] = seed;");
+        out.println("                        continue nextBucket;");
+        out.println("                    }");
+        out.println("                    seeds = null;");
+        out.println("                    break;");
+        out.println("                }");
+        out.println("                if (seeds != null) {");
+        out.print("                    return new ");
+        out.print(container.getClassName());
+        out.println("(");
+        out.println("                            keys,");
+        out.println("                            values,");
+        out.println("                            seeds,");
+        out.println("                            bucketShift,");
+        out.println("                            shift,");
+        out.println("                            overflowKeys.isEmpty()");
+        out.println("                                    ? null");
+        out.println("                                    : overflowKeys.toArray(),");
+        out.println("                            overflowValues.toArray());");
+        out.println("                }");
+        out.println("                tableBits++;");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private static int bucket(int hashCode, int bucketShift) {");
+        out.println("        return (hashCode * 0x9E3779B9) >>> bucketShift;");
+        out.println("    }");
+        out.println();
+        out.println("    private Object lookup(Object key) {");
+        out.println("        int hashCode = System.identityHashCode(key);");
+        out.println("        int i = (hashCode * seeds[bucket(hashCode, bucketShift)]) >>> shift;");
+        out.println("        if (keys[i] == key) {");
+        out.println("            return values[i];");
+        out.println("        }");
+        out.println("        if (overflowKeys != null) {");
+        out.println("            for (int j = 0; j < overflowKeys.length; j++) {");
+        out.println("                if (overflowKeys[j] == key) {");
+        out.println("                    return overflowValues[j];");
+        out.println("                }");
+        out.println("            }");
+        out.println("        }");
+        out.println("        return null;");
+        out.println("    }");
+        out.println();
+        out.println("    private int count() {");
+        out.println("        return size;");
+        out.println("    }");
+        out.println();
+        out.println("    private void visit(Visitor visitor) {");
+        out.println("        for (int i = 0; i < keys.length; i++) {");
+        out.println("            if (values[i] != null) {");
+        out.println("                accept(visitor, keys[i], values[i]);");
+        out.println("            }");
+        out.println("        }");
+        out.println("        for (int j = 0; j < overflowValues.length; j++) {");
+        out.println("            if (overflowValues[j] != null) {");
+        out.println("                accept(visitor, overflowKeys[j], overflowValues[j]);");
+        out.println("            }");
+        out.println("        }");
+        out.println("    }");
+    }
+}
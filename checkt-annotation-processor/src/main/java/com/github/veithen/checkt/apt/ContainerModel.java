@@ -0,0 +1,264 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+
+/**
+ * Describes a class annotated with {@code Container} together with the options specified in the
+ * annotation. The options are validated by {@link ChecktProcessor} before the model is passed to
+ * {@link ContainerGenerator}.
+ */
+final class ContainerModel {
+    private final PackageElement pkg;
+    private final String className;
+    private final String entryType;
+    private final boolean isPublic;
+    private final String typeParameters;
+    private final TypeMirror keyType;
+    private final TypeMirror valueType;
+    private final boolean classKeyed;
+    private final String enumType;
+    private final boolean concurrent;
+    private final int expectedSize;
+    private final boolean frozen;
+    private final boolean weakKeys;
+    private final int maximumSize;
+    private final boolean clock;
+    private final boolean multiValued;
+    private final boolean equality;
+    private final boolean hierarchical;
+    private final boolean scoped;
+    private final boolean scopedValues;
+    private final ContainerStorage storage;
+
+    /**
+     * Constructor.
+     *
+     * @param processingEnv the processing environment
+     * @param element the annotated class
+     * @param values the values of the {@code Container} annotation, including defaults
+     */
+    ContainerModel(
+            ProcessingEnvironment processingEnv,
+            TypeElement element,
+            Map<? extends ExecutableElement, ? extends AnnotationValue> values) {
+        pkg = (PackageElement) element.getEnclosingElement();
+        className = (String) ChecktProcessor.getAnnotationValue(values, "value");
+        entryType =
+                element.getSimpleName()
+                        + (element.getTypeParameters().isEmpty()
+                                ? ""
+                                : element.getTypeParameters().stream()
+                                        .map(t -> "?")
+                                        .collect(Collectors.joining(",", "<", ">")));
+        isPublic = element.getModifiers().contains(Modifier.PUBLIC);
+        typeParameters =
+                element.getTypeParameters().isEmpty()
+                        ? ""
+                        : ChecktProcessor.formatTypeParameters(element.getTypeParameters());
+        List<? extends TypeMirror> typeArguments =
+                ((DeclaredType) element.getSuperclass()).getTypeArguments();
+        keyType = typeArguments.get(0);
+        valueType = typeArguments.get(1);
+        classKeyed = isClass(processingEnv, keyType);
+        enumType = getEnumType(processingEnv, keyType);
+        concurrent = (Boolean) ChecktProcessor.getAnnotationValue(values, "concurrent");
+        expectedSize = (Integer) ChecktProcessor.getAnnotationValue(values, "expectedSize");
+        frozen = (Boolean) ChecktProcessor.getAnnotationValue(values, "frozen");
+        weakKeys = (Boolean) ChecktProcessor.getAnnotationValue(values, "weakKeys");
+        maximumSize = (Integer) ChecktProcessor.getAnnotationValue(values, "maximumSize");
+        clock =
+                ((VariableElement) ChecktProcessor.getAnnotationValue(values, "eviction"))
+                        .getSimpleName()
+                        .contentEquals("CLOCK");
+        multiValued = (Boolean) ChecktProcessor.getAnnotationValue(values, "multiValued");
+        equality = (Boolean) ChecktProcessor.getAnnotationValue(values, "equality");
+        hierarchical = (Boolean) ChecktProcessor.getAnnotationValue(values, "hierarchical");
+        scoped = (Boolean) ChecktProcessor.getAnnotationValue(values, "scoped");
+        scopedValues = scoped && isScopedValueAvailable(processingEnv);
+        storage = selectStorage();
+    }
+
+    private static boolean isClass(ProcessingEnvironment processingEnv, TypeMirror type) {
+        Types typeUtils = processingEnv.getTypeUtils();
+        return typeUtils.isSameType(
+                typeUtils.erasure(type),
+                typeUtils.getDeclaredType(
+                        processingEnv.getElementUtils().getTypeElement("java.lang.Class")));
+    }
+
+    /**
+     * Determines the enum type that a container key type refers to.
+     *
+     * @return the qualified name of the enum type, or {@code null} if the key type isn't an enum
+     */
+    private static String getEnumType(ProcessingEnvironment processingEnv, TypeMirror type) {
+        Element element = processingEnv.getTypeUtils().asElement(type);
+        return element != null && element.getKind() == ElementKind.ENUM
+                ? ((TypeElement) element).getQualifiedName().toString()
+                : null;
+    }
+
+    private static boolean isScopedValueAvailable(ProcessingEnvironment processingEnv) {
+        return processingEnv.getSourceVersion().ordinal() >= 25
+                && processingEnv.getElementUtils().getTypeElement("java.lang.ScopedValue") != null;
+    }
+
+    /**
+     * Selects the storage. Options that can't be combined with each other are rejected by the
+     * processor; the order of the checks only matters for options that are compatible, e.g. a
+     * concurrent container keyed by class uses {@link ContainerStorage#CLASS_VALUE}.
+     */
+    private ContainerStorage selectStorage() {
+        if (scoped) {
+            return ContainerStorage.SCOPED;
+        } else if (frozen) {
+            return ContainerStorage.FROZEN;
+        } else if (maximumSize > 0) {
+            return ContainerStorage.BOUNDED;
+        } else if (classKeyed) {
+            return ContainerStorage.CLASS_VALUE;
+        } else if (enumType != null) {
+            return ContainerStorage.ORDINAL;
+        } else if (weakKeys) {
+            return ContainerStorage.WEAK_KEYS;
+        } else if (concurrent) {
+            return ContainerStorage.CONCURRENT_TABLE;
+        } else if (equality) {
+            return ContainerStorage.EQUALITY_TABLE;
+        } else {
+            return ContainerStorage.IDENTITY_TABLE;
+        }
+    }
+
+    PackageElement getPackage() {
+        return pkg;
+    }
+
+    /** Returns the simple name of the generated container class. */
+    String getClassName() {
+        return className;
+    }
+
+    /** Returns the fully qualified name of the generated container class. */
+    String getQualifiedClassName() {
+        return pkg.getQualifiedName() + "." + className;
+    }
+
+    /** Returns the annotated class parameterized with wildcards. */
+    String getEntryType() {
+        return entryType;
+    }
+
+    boolean isPublic() {
+        return isPublic;
+    }
+
+    /**
+     * Returns the type parameter declarations of the annotated class, including their bounds, or
+     * an empty string if the class isn't generic.
+     */
+    String getTypeParameters() {
+        return typeParameters;
+    }
+
+    TypeMirror getKeyType() {
+        return keyType;
+    }
+
+    TypeMirror getValueType() {
+        return valueType;
+    }
+
+    boolean isClassKeyed() {
+        return classKeyed;
+    }
+
+    /** Returns the qualified name of the enum type of the keys, or {@code null}. */
+    String getEnumType() {
+        return enumType;
+    }
+
+    boolean isConcurrent() {
+        return concurrent;
+    }
+
+    int getExpectedSize() {
+        return expectedSize;
+    }
+
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    boolean isWeakKeys() {
+        return weakKeys;
+    }
+
+    int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /** Determines whether the container is bounded and uses the CLOCK eviction policy. */
+    boolean isClock() {
+        return clock;
+    }
+
+    boolean isMultiValued() {
+        return multiValued;
+    }
+
+    boolean isEquality() {
+        return equality;
+    }
+
+    boolean isHierarchical() {
+        return hierarchical;
+    }
+
+    boolean isScoped() {
+        return scoped;
+    }
+
+    /** Determines whether a scoped container binds its context with a {@code ScopedValue}. */
+    boolean isScopedValues() {
+        return scopedValues;
+    }
+
+    ContainerStorage getStorage() {
+        return storage;
+    }
+}
@@ -0,0 +1,53 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+/**
+ * The data structure used by a generated container. It is determined by the options of the {@code
+ * Container} annotation and the key type; see {@link ContainerModel#getStorage()}.
+ */
+enum ContainerStorage {
+    /** An immutable linked list bound to the current thread, for scoped containers. */
+    SCOPED,
+
+    /** A perfect hash table built once, for frozen containers. */
+    FROZEN,
+
+    /** Dense arrays with an eviction policy, for containers with a maximum size. */
+    BOUNDED,
+
+    /** Slots attached to the keys with a {@link ClassValue}, for containers keyed by class. */
+    CLASS_VALUE,
+
+    /** An array indexed by ordinal, for containers keyed by an enum type. */
+    ORDINAL,
+
+    /** A hash table of weak references to the keys, for containers with weak keys. */
+    WEAK_KEYS,
+
+    /** An open addressing table updated with CAS, for other concurrent containers. */
+    CONCURRENT_TABLE,
+
+    /** An open addressing table comparing keys with {@code equals}. */
+    EQUALITY_TABLE,
+
+    /** An open addressing table comparing keys by identity. */
+    IDENTITY_TABLE
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Collects statistics about the work done by {@link ChecktProcessor}. */
+final class ProcessorStats {
+    static final class Round {
+        private final Map<String, Integer> elements = new TreeMap<>();
+        private long safeCastNanos;
+        private long containerNanos;
+        private int files;
+        private long bytes;
+
+        void addElements(String annotation, int count) {
+            elements.merge(annotation, count, Integer::sum);
+        }
+
+        void addSafeCastNanos(long nanos) {
+            safeCastNanos += nanos;
+        }
+
+        void addContainerNanos(long nanos) {
+            containerNanos += nanos;
+        }
+
+        void addFile(long bytes) {
+            files++;
+            this.bytes += bytes;
+        }
+    }
+
+    private final List<Round> rounds = new ArrayList<>();
+
+    Round startRound() {
+        Round round = new Round();
+        rounds.add(round);
+        return round;
+    }
+
+    String getSummary() {
+        int elements = 0;
+        long nanos = 0;
+        int files = 0;
+        long bytes = 0;
+        for (Round round : rounds) {
+            for (int count : round.elements.values()) {
+                elements += count;
+            }
+            nanos += round.safeCastNanos + round.containerNanos;
+            files += round.files;
+            bytes += round.bytes;
+        }
+        return String.format(
+                "checkt: processed %d annotated elements in %d rounds and generated %d files"
+                        + " (%d bytes) in %.1f ms",
+                elements, rounds.size(), files, bytes, nanos / 1e6);
+    }
+
+    String toJson() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("{\n  \"rounds\": [");
+        for (int i = 0; i < rounds.size(); i++) {
+            Round round = rounds.get(i);
+            if (i > 0) {
+                buffer.append(',');
+            }
+            buffer.append("\n    {\n      \"round\": ").append(i + 1);
+            buffer.append(",\n      \"elements\": {");
+            boolean first = true;
+            for (Map.Entry<String, Integer> entry : round.elements.entrySet()) {
+                if (first) {
+                    first = false;
+                } else {
+                    buffer.append(',');
+                }
+                buffer.append("\n        \"")
+                        .append(entry.getKey())
+                        .append("\": ")
+                        .append(entry.getValue());
+            }
+            buffer.append(first ? "}" : "\n      }");
+            buffer.append(",\n      \"safeCastNanos\": ").append(round.safeCastNanos);
+            buffer.append(",\n      \"containerNanos\": ").append(round.containerNanos);
+            buffer.append(",\n      \"files\": ").append(round.files);
+            buffer.append(",\n      \"bytes\": ").append(round.bytes);
+            buffer.append("\n    }");
+        }
+        buffer.append(rounds.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        return buffer.toString();
+    }
+}
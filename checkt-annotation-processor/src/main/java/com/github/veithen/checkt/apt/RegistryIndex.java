@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The index of annotated classes written to {@link #RESOURCE_NAME}. The format is documented in
+ * {@code ChecktIndex}, which reads the index at runtime.
+ */
+final class RegistryIndex {
+    static final String RESOURCE_NAME = "META-INF/checkt/index";
+
+    private final Map<String, String> containers = new TreeMap<>();
+    private final Set<String> typeTokenClasses = new TreeSet<>();
+
+    void addContainer(String className, String containerClassName) {
+        containers.put(className, containerClassName);
+    }
+
+    void addTypeTokenClass(String className) {
+        typeTokenClasses.add(className);
+    }
+
+    boolean isEmpty() {
+        return containers.isEmpty() && typeTokenClasses.isEmpty();
+    }
+
+    void writeTo(Writer out) throws IOException {
+        out.write("# Generated by the Checkt annotation processor\n");
+        for (Map.Entry<String, String> entry : containers.entrySet()) {
+            out.write("container ");
+            out.write(entry.getKey());
+            out.write(" ");
+            out.write(entry.getValue());
+            out.write("\n");
+        }
+        for (String className : typeTokenClasses) {
+            out.write("typetoken ");
+            out.write(className);
+            out.write("\n");
+        }
+    }
+}
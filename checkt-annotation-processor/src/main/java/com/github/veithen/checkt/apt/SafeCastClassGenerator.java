@@ -0,0 +1,767 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+import static com.github.veithen.checkt.apt.ClassFileWriter.ACC_ABSTRACT;
+import static com.github.veithen.checkt.apt.ClassFileWriter.ACC_BRIDGE;
+import static com.github.veithen.checkt.apt.ClassFileWriter.ACC_FINAL;
+import static com.github.veithen.checkt.apt.ClassFileWriter.ACC_PRIVATE;
+import static com.github.veithen.checkt.apt.ClassFileWriter.ACC_PROTECTED;
+import static com.github.veithen.checkt.apt.ClassFileWriter.ACC_PUBLIC;
+import static com.github.veithen.checkt.apt.ClassFileWriter.ACC_STATIC;
+import static com.github.veithen.checkt.apt.ClassFileWriter.ACC_SUPER;
+import static com.github.veithen.checkt.apt.ClassFileWriter.ACC_SYNTHETIC;
+import static com.github.veithen.checkt.apt.ClassFileWriter.GOTO;
+import static com.github.veithen.checkt.apt.ClassFileWriter.IFEQ;
+import static com.github.veithen.checkt.apt.ClassFileWriter.IFNE;
+import static com.github.veithen.checkt.apt.ClassFileWriter.IFNULL;
+import static com.github.veithen.checkt.apt.ClassFileWriter.IF_ACMPNE;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import com.github.veithen.checkt.apt.ClassFileWriter.Code;
+import com.github.veithen.checkt.apt.ClassFileWriter.Label;
+
+/**
+ * Generates the {@code SafeCast} class for a package directly as class files. The generated
+ * methods have the same signatures and behavior as the ones compiled from the output of {@link
+ * SafeCastGenerator}. Lambdas are replaced by a {@code Caster} subclass per set of tokens, and
+ * the unchecked casts that are no-ops after erasure are omitted.
+ */
+final class SafeCastClassGenerator {
+    private static final String OBJECT = "java/lang/Object";
+    private static final String FUNCTION = "java/util/function/Function";
+    private static final String PREDICATE = "java/util/function/Predicate";
+    private static final String LIST = "java/util/List";
+    private static final String ITERATOR = "java/util/Iterator";
+    private static final String ITERABLE = "java/lang/Iterable";
+    private static final String STREAM = "java/util/stream/Stream";
+    private static final String CLASS_VALUE = "java/lang/ClassValue";
+    private static final String CHECKER_CONSTRUCTOR_SUFFIX = "Ljava/util/function/Function;)V";
+
+    private final Collection<TypeModel> types;
+    private final Types typeUtils;
+    private final Elements elementUtils;
+    private final CheckPolicy checkPolicy;
+    private final boolean isPublic;
+    private final String safeCast;
+    private final String caster;
+    private final String checkedList;
+    private final String checkedIterator;
+    private final String checkedIterable;
+    private final Map<String, byte[]> classes = new LinkedHashMap<>();
+    /** The caster caches, with the name of the {@link ClassValue} subclass to instantiate. */
+    private final Map<String, String> caches = new LinkedHashMap<>();
+    private int casterCount;
+
+    SafeCastClassGenerator(
+            String packageName,
+            Collection<TypeModel> types,
+            Types typeUtils,
+            Elements elementUtils,
+            CheckPolicy checkPolicy) {
+        this.types = types;
+        this.typeUtils = typeUtils;
+        this.elementUtils = elementUtils;
+        this.checkPolicy = checkPolicy;
+        isPublic = types.stream().anyMatch(TypeModel::isPublic);
+        safeCast = packageName.isEmpty() ? "SafeCast" : packageName.replace('.', '/') + "/SafeCast";
+        caster = safeCast + "$Caster";
+        checkedList = safeCast + "$CheckedList";
+        checkedIterator = safeCast + "$CheckedIterator";
+        checkedIterable = safeCast + "$CheckedIterable";
+    }
+
+    /**
+     * Generates the class files.
+     *
+     * @return the content of the class files, indexed by binary name
+     */
+    Map<String, byte[]> generate() {
+        int access = (isPublic ? ACC_PUBLIC : 0) | ACC_FINAL | ACC_SUPER;
+        ClassFileWriter cw = new ClassFileWriter(access, safeCast, OBJECT, null);
+        addInnerClasses(cw);
+        Code code = cw.addMethod(ACC_PRIVATE, "<init>", "()V", null);
+        code.aload(0);
+        code.invokespecial(OBJECT, "<init>", "()V");
+        code.returnVoid();
+        if (checkPolicy != CheckPolicy.ALWAYS) {
+            cw.addField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "CHECKS_ENABLED", "Z", null);
+        }
+        for (TypeModel type : types) {
+            List<TokenModel> tokens = type.getTokens();
+            generateCastMethods(cw, type, tokens, "");
+            if (tokens.size() > 1) {
+                for (TokenModel token : tokens) {
+                    generateCastMethods(
+                            cw, type, Collections.singletonList(token), "By" + token.getSuffix());
+                }
+            }
+        }
+        code = cw.addMethod(ACC_STATIC, "<clinit>", "()V", null);
+        initChecksEnabled(code);
+        for (Map.Entry<String, String> cache : caches.entrySet()) {
+            code.newObject(cache.getValue());
+            code.dup();
+            code.invokespecial(cache.getValue(), "<init>", "()V");
+            code.putstatic(safeCast, cache.getKey(), "L" + CLASS_VALUE + ";");
+        }
+        code.returnVoid();
+        put(safeCast, cw);
+        generateCaster();
+        generateCheckedList();
+        generateCheckedIterator();
+        generateCheckedIterable();
+        return classes;
+    }
+
+    /** Adds the code that initializes the field checked by the {@code cast} methods. */
+    private void initChecksEnabled(Code code) {
+        if (checkPolicy == CheckPolicy.ASSERT) {
+            code.ldcClass(safeCast);
+            code.invokevirtual("java/lang/Class", "desiredAssertionStatus", "()Z");
+        } else if (checkPolicy == CheckPolicy.GUARDED) {
+            Label disabled = new Label();
+            Label store = new Label();
+            code.ldc("false");
+            code.ldc(CheckPolicy.SYSTEM_PROPERTY);
+            code.invokestatic(
+                    "java/lang/System", "getProperty", "(Ljava/lang/String;)Ljava/lang/String;");
+            code.invokevirtual("java/lang/String", "equals", "(L" + OBJECT + ";)Z");
+            code.jump(IFNE, disabled);
+            code.iconst(1);
+            code.jump(GOTO, store);
+            code.mark(disabled);
+            code.iconst(0);
+            code.mark(store);
+        } else {
+            return;
+        }
+        code.putstatic(safeCast, "CHECKS_ENABLED", "Z");
+    }
+
+    private void put(String name, ClassFileWriter cw) {
+        classes.put(name.replace('/', '.'), cw.toByteArray());
+    }
+
+    private void addInnerClasses(ClassFileWriter cw) {
+        int casterAccess = (isPublic ? ACC_PUBLIC : 0) | ACC_STATIC | ACC_ABSTRACT;
+        cw.addInnerClass(caster, safeCast, "Caster", casterAccess);
+        int access = ACC_PRIVATE | ACC_STATIC | ACC_FINAL;
+        cw.addInnerClass(checkedList, safeCast, "CheckedList", access);
+        cw.addInnerClass(checkedIterator, safeCast, "CheckedIterator", access);
+        cw.addInnerClass(checkedIterable, safeCast, "CheckedIterable", access);
+    }
+
+    private void generateCastMethods(
+            ClassFileWriter cw, TypeModel type, List<TokenModel> tokens, String suffix) {
+        String owner = internalName(type.getElement());
+        boolean isInterface = type.getElement().getKind().isInterface();
+        String ownerDescriptor = "L" + owner + ";";
+        List<String> tokenDescriptors = new ArrayList<>();
+        StringBuilder tokensDescriptor = new StringBuilder();
+        StringBuilder tokensSignature = new StringBuilder();
+        for (TokenModel token : tokens) {
+            String descriptor = descriptor(token.getReturnType());
+            tokenDescriptors.add(descriptor);
+            tokensDescriptor.append(descriptor);
+            appendSignature(tokensSignature, token.getReturnType());
+        }
+        String typeParameters = typeParametersSignature(type);
+        String paramType = classSignature(type, p -> !TypeModel.isConstrained(p, tokens));
+        String resultType = classSignature(type, p -> true);
+        String narrowedType = classSignature(type, p -> TypeModel.isConstrained(p, tokens));
+        String elementType = classSignature(type, p -> false);
+        String narrowedTypeParameters =
+                typeParametersSignature(type.getNarrowedTypeParameters(tokens));
+        int access = (type.isPublic() ? ACC_PUBLIC : 0) | ACC_STATIC;
+
+        String castDescriptor = "(" + ownerDescriptor + tokensDescriptor + ")" + ownerDescriptor;
+        String castSignature =
+                typeParameters + "(" + paramType + tokensSignature + ")" + resultType;
+        Code code = cw.addMethod(access, "cast" + suffix, castDescriptor, castSignature);
+        Label fail = new Label();
+        Label checked = new Label();
+        if (checkPolicy != CheckPolicy.ALWAYS) {
+            code.getstatic(safeCast, "CHECKS_ENABLED", "Z");
+            code.jump(IFEQ, checked);
+        }
+        addChecks(code, owner, isInterface, tokens, tokenDescriptors, fail);
+        code.mark(checked);
+        code.aload(0);
+        code.areturn();
+        code.mark(fail);
+        code.throwClassCastException();
+
+        code = cw.addMethod(access, "tryCast" + suffix, castDescriptor, castSignature);
+        String isCastableDescriptor = "(" + ownerDescriptor + tokensDescriptor + ")Z";
+        fail = new Label();
+        for (int i = 0; i <= tokens.size(); i++) {
+            code.aload(i);
+        }
+        code.invokestatic(safeCast, "isCastable" + suffix, isCastableDescriptor);
+        code.jump(IFEQ, fail);
+        code.aload(0);
+        code.areturn();
+        code.mark(fail);
+        code.aconstNull();
+        code.areturn();
+
+        code =
+                cw.addMethod(
+                        access,
+                        "isCastable" + suffix,
+                        isCastableDescriptor,
+                        typeParameters + "(" + paramType + tokensSignature + ")Z");
+        fail = new Label();
+        code.aload(0);
+        code.jump(IFNULL, fail);
+        addChecks(code, owner, isInterface, tokens, tokenDescriptors, fail);
+        code.iconst(1);
+        code.ireturn();
+        code.mark(fail);
+        code.iconst(0);
+        code.ireturn();
+
+        String impl =
+                generateCasterImpl(
+                        owner, tokens, tokenDescriptors, suffix, isCastableDescriptor);
+
+        code =
+                cw.addMethod(
+                        access,
+                        "castAll" + type.getSimpleName() + suffix,
+                        "(L" + LIST + ";" + tokensDescriptor + ")L" + LIST + ";",
+                        narrowedTypeParameters
+                                + "(L"
+                                + LIST
+                                + "<+"
+                                + elementType
+                                + ">;"
+                                + tokensSignature
+                                + ")L"
+                                + LIST
+                                + "<"
+                                + narrowedType
+                                + ">;");
+        code.newObject(checkedList);
+        code.dup();
+        code.aload(0);
+        newCasterImpl(code, impl, tokens, tokensDescriptor, 1);
+        code.invokespecial(checkedList, "<init>", "(L" + LIST + ";" + CHECKER_CONSTRUCTOR_SUFFIX);
+        code.areturn();
+
+        code =
+                cw.addMethod(
+                        access,
+                        "castAll" + type.getSimpleName() + suffix,
+                        "(L" + ITERABLE + ";" + tokensDescriptor + ")L" + ITERABLE + ";",
+                        narrowedTypeParameters
+                                + "(L"
+                                + ITERABLE
+                                + "<+"
+                                + elementType
+                                + ">;"
+                                + tokensSignature
+                                + ")L"
+                                + ITERABLE
+                                + "<"
+                                + narrowedType
+                                + ">;");
+        code.newObject(checkedIterable);
+        code.dup();
+        code.aload(0);
+        newCasterImpl(code, impl, tokens, tokensDescriptor, 1);
+        code.invokespecial(
+                checkedIterable, "<init>", "(L" + ITERABLE + ";" + CHECKER_CONSTRUCTOR_SUFFIX);
+        code.areturn();
+
+        // The map stage in the source version only performs an unchecked cast and is omitted.
+        code =
+                cw.addMethod(
+                        access,
+                        "filter" + type.getSimpleName() + suffix,
+                        "(L" + STREAM + ";" + tokensDescriptor + ")L" + STREAM + ";",
+                        narrowedTypeParameters
+                                + "(L"
+                                + STREAM
+                                + "<+"
+                                + elementType
+                                + ">;"
+                                + tokensSignature
+                                + ")L"
+                                + STREAM
+                                + "<"
+                                + narrowedType
+                                + ">;");
+        code.aload(0);
+        newCasterImpl(code, impl, tokens, tokensDescriptor, 1);
+        code.invokeinterface(STREAM, "filter", "(L" + PREDICATE + ";)L" + STREAM + ";");
+        code.areturn();
+
+        String casterName =
+                Character.toLowerCase(type.getSimpleName().charAt(0))
+                        + type.getSimpleName().substring(1)
+                        + "Caster";
+        String cacheName = casterName + "s" + suffix;
+        String cacheDescriptor = "L" + CLASS_VALUE + ";";
+        boolean cached = SafeCastGenerator.isCasterCached(tokens);
+        if (cached) {
+            cw.addField(
+                    ACC_PRIVATE | ACC_STATIC | ACC_FINAL,
+                    cacheName,
+                    cacheDescriptor,
+                    "L" + CLASS_VALUE + "<L" + caster + "<**>;>;");
+            caches.put(cacheName, generateCasterClassValue(impl, tokenDescriptors.get(0)));
+        }
+        code =
+                cw.addMethod(
+                        access,
+                        casterName + suffix,
+                        "(" + tokensDescriptor + ")L" + caster + ";",
+                        narrowedTypeParameters
+                                + "("
+                                + tokensSignature
+                                + ")L"
+                                + caster
+                                + "<"
+                                + elementType
+                                + narrowedType
+                                + ">;");
+        for (int i = 0; i < tokens.size(); i++) {
+            code.aload(i);
+            code.invokestatic(
+                    "java/util/Objects", "requireNonNull", "(L" + OBJECT + ";)L" + OBJECT + ";");
+            code.pop();
+        }
+        if (cached) {
+            code.getstatic(safeCast, cacheName, cacheDescriptor);
+            code.aload(0);
+            code.invokevirtual(CLASS_VALUE, "get", "(Ljava/lang/Class;)L" + OBJECT + ";");
+            code.checkcast(caster);
+        } else {
+            newCasterImpl(code, impl, tokens, tokensDescriptor, 0);
+        }
+        code.areturn();
+    }
+
+    /**
+     * Adds the code that checks the tokens of the object in local variable 0 against the tokens
+     * in the subsequent local variables.
+     */
+    private static void addChecks(
+            Code code,
+            String owner,
+            boolean isInterface,
+            List<TokenModel> tokens,
+            List<String> tokenDescriptors,
+            Label fail) {
+        for (int i = 0; i < tokens.size(); i++) {
+            code.aload(i + 1);
+            code.jump(IFNULL, fail);
+            code.aload(0);
+            String descriptor = "()" + tokenDescriptors.get(i);
+            if (isInterface) {
+                code.invokeinterface(owner, tokens.get(i).getMethodName(), descriptor);
+            } else {
+                code.invokevirtual(owner, tokens.get(i).getMethodName(), descriptor);
+            }
+            code.aload(i + 1);
+            code.jump(IF_ACMPNE, fail);
+        }
+    }
+
+    private static void newCasterImpl(
+            Code code,
+            String impl,
+            List<TokenModel> tokens,
+            CharSequence tokensDescriptor,
+            int firstLocal) {
+        code.newObject(impl);
+        code.dup();
+        for (int i = 0; i < tokens.size(); i++) {
+            code.aload(firstLocal + i);
+        }
+        code.invokespecial(impl, "<init>", "(" + tokensDescriptor + ")V");
+    }
+
+    /**
+     * Generates the {@code Caster} subclass for a set of tokens. It plays the role of the
+     * anonymous class in the caster factory and of the lambdas in the bulk methods.
+     *
+     * @return the internal name of the generated class
+     */
+    private String generateCasterImpl(
+            String owner,
+            List<TokenModel> tokens,
+            List<String> tokenDescriptors,
+            String suffix,
+            String isCastableDescriptor) {
+        String name = safeCast + "$" + ++casterCount;
+        ClassFileWriter cw = new ClassFileWriter(ACC_FINAL | ACC_SUPER, name, caster, null);
+        addInnerClasses(cw);
+        StringBuilder tokensDescriptor = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            cw.addField(
+                    ACC_PRIVATE | ACC_FINAL,
+                    tokens.get(i).getName(),
+                    tokenDescriptors.get(i),
+                    null);
+            tokensDescriptor.append(tokenDescriptors.get(i));
+        }
+        Code code = cw.addMethod(0, "<init>", "(" + tokensDescriptor + ")V", null);
+        code.aload(0);
+        code.invokespecial(caster, "<init>", "()V");
+        for (int i = 0; i < tokens.size(); i++) {
+            code.aload(0);
+            code.aload(i + 1);
+            code.putfield(name, tokens.get(i).getName(), tokenDescriptors.get(i));
+        }
+        code.returnVoid();
+
+        String testDescriptor = "(L" + owner + ";)Z";
+        code = cw.addMethod(ACC_PUBLIC, "test", testDescriptor, null);
+        code.aload(1);
+        for (int i = 0; i < tokens.size(); i++) {
+            code.aload(0);
+            code.getfield(name, tokens.get(i).getName(), tokenDescriptors.get(i));
+        }
+        code.invokestatic(safeCast, "isCastable" + suffix, isCastableDescriptor);
+        code.ireturn();
+
+        code =
+                cw.addMethod(
+                        ACC_PUBLIC | ACC_BRIDGE | ACC_SYNTHETIC,
+                        "test",
+                        "(L" + OBJECT + ";)Z",
+                        null);
+        code.aload(0);
+        code.aload(1);
+        code.checkcast(owner);
+        code.invokevirtual(name, "test", testDescriptor);
+        code.ireturn();
+
+        put(name, cw);
+        return name;
+    }
+
+    /**
+     * Generates the {@link ClassValue} subclass that caches the casters for a single {@link Class}
+     * token. It plays the role of the anonymous class in the initializer of the cache field.
+     *
+     * @return the internal name of the generated class
+     */
+    private String generateCasterClassValue(String impl, String tokenDescriptor) {
+        String name = safeCast + "$" + ++casterCount;
+        ClassFileWriter cw = new ClassFileWriter(ACC_FINAL | ACC_SUPER, name, CLASS_VALUE, null);
+        Code code = cw.addMethod(0, "<init>", "()V", null);
+        code.aload(0);
+        code.invokespecial(CLASS_VALUE, "<init>", "()V");
+        code.returnVoid();
+
+        code =
+                cw.addMethod(
+                        ACC_PROTECTED, "computeValue", "(Ljava/lang/Class;)L" + OBJECT + ";", null);
+        code.newObject(impl);
+        code.dup();
+        code.aload(1);
+        code.invokespecial(impl, "<init>", "(" + tokenDescriptor + ")V");
+        code.areturn();
+
+        put(name, cw);
+        return name;
+    }
+
+    private void generateCaster() {
+        ClassFileWriter cw =
+                new ClassFileWriter(
+                        (isPublic ? ACC_PUBLIC : 0) | ACC_ABSTRACT | ACC_SUPER,
+                        caster,
+                        OBJECT,
+                        "<S:L" + OBJECT + ";T:L" + OBJECT + ";>L" + OBJECT + ";L" + FUNCTION
+                                + "<TS;TT;>;L" + PREDICATE + "<TS;>;",
+                        FUNCTION,
+                        PREDICATE);
+        addInnerClasses(cw);
+        Code code = cw.addMethod(0, "<init>", "()V", null);
+        code.aload(0);
+        code.invokespecial(OBJECT, "<init>", "()V");
+        code.returnVoid();
+
+        code =
+                cw.addMethod(
+                        ACC_PUBLIC | ACC_FINAL,
+                        "apply",
+                        "(L" + OBJECT + ";)L" + OBJECT + ";",
+                        "(TS;)TT;");
+        Label fail = new Label();
+        code.aload(0);
+        code.aload(1);
+        code.invokeinterface(PREDICATE, "test", "(L" + OBJECT + ";)Z");
+        code.jump(IFEQ, fail);
+        code.aload(1);
+        code.areturn();
+        code.mark(fail);
+        code.throwClassCastException();
+
+        put(caster, cw);
+    }
+
+    private void generateCheckedList() {
+        ClassFileWriter cw =
+                new ClassFileWriter(
+                        ACC_FINAL | ACC_SUPER, checkedList, "java/util/AbstractList", null);
+        addInnerClasses(cw);
+        addCheckedFields(cw, checkedList, "list", LIST);
+
+        Code code = cw.addMethod(ACC_PUBLIC, "get", "(I)L" + OBJECT + ";", null);
+        code.aload(0);
+        code.getfield(checkedList, "checker", "L" + FUNCTION + ";");
+        code.aload(0);
+        code.getfield(checkedList, "list", "L" + LIST + ";");
+        code.iload(1);
+        code.invokeinterface(LIST, "get", "(I)L" + OBJECT + ";");
+        code.invokeinterface(FUNCTION, "apply", "(L" + OBJECT + ";)L" + OBJECT + ";");
+        code.areturn();
+
+        code = cw.addMethod(ACC_PUBLIC, "size", "()I", null);
+        code.aload(0);
+        code.getfield(checkedList, "list", "L" + LIST + ";");
+        code.invokeinterface(LIST, "size", "()I");
+        code.ireturn();
+
+        addIteratorMethod(cw, checkedList, "list", LIST);
+        put(checkedList, cw);
+    }
+
+    private void generateCheckedIterator() {
+        ClassFileWriter cw =
+                new ClassFileWriter(ACC_FINAL | ACC_SUPER, checkedIterator, OBJECT, null, ITERATOR);
+        addInnerClasses(cw);
+        addCheckedFields(cw, checkedIterator, "iterator", ITERATOR);
+
+        Code code = cw.addMethod(ACC_PUBLIC, "hasNext", "()Z", null);
+        code.aload(0);
+        code.getfield(checkedIterator, "iterator", "L" + ITERATOR + ";");
+        code.invokeinterface(ITERATOR, "hasNext", "()Z");
+        code.ireturn();
+
+        code = cw.addMethod(ACC_PUBLIC, "next", "()L" + OBJECT + ";", null);
+        code.aload(0);
+        code.getfield(checkedIterator, "checker", "L" + FUNCTION + ";");
+        code.aload(0);
+        code.getfield(checkedIterator, "iterator", "L" + ITERATOR + ";");
+        code.invokeinterface(ITERATOR, "next", "()L" + OBJECT + ";");
+        code.invokeinterface(FUNCTION, "apply", "(L" + OBJECT + ";)L" + OBJECT + ";");
+        code.areturn();
+
+        put(checkedIterator, cw);
+    }
+
+    /** Generates the class that replaces the lambda returned by the {@code Iterable} variant. */
+    private void generateCheckedIterable() {
+        ClassFileWriter cw =
+                new ClassFileWriter(ACC_FINAL | ACC_SUPER, checkedIterable, OBJECT, null, ITERABLE);
+        addInnerClasses(cw);
+        addCheckedFields(cw, checkedIterable, "iterable", ITERABLE);
+        addIteratorMethod(cw, checkedIterable, "iterable", ITERABLE);
+        put(checkedIterable, cw);
+    }
+
+    /**
+     * Adds the fields and the constructor of a class that wraps an object of the given type
+     * together with a checker function.
+     */
+    private static void addCheckedFields(
+            ClassFileWriter cw, String name, String field, String fieldType) {
+        String superName = fieldType.equals(LIST) ? "java/util/AbstractList" : OBJECT;
+        cw.addField(ACC_PRIVATE | ACC_FINAL, field, "L" + fieldType + ";", null);
+        cw.addField(ACC_PRIVATE | ACC_FINAL, "checker", "L" + FUNCTION + ";", null);
+        Code code =
+                cw.addMethod(
+                        0, "<init>", "(L" + fieldType + ";" + CHECKER_CONSTRUCTOR_SUFFIX, null);
+        code.aload(0);
+        code.invokespecial(superName, "<init>", "()V");
+        code.aload(0);
+        code.aload(1);
+        code.putfield(name, field, "L" + fieldType + ";");
+        code.aload(0);
+        code.aload(2);
+        code.putfield(name, "checker", "L" + FUNCTION + ";");
+        code.returnVoid();
+    }
+
+    /**
+     * Adds an {@code iterator} method that wraps the iterator of the given field in a {@code
+     * CheckedIterator}.
+     */
+    private void addIteratorMethod(
+            ClassFileWriter cw, String name, String field, String fieldType) {
+        Code code = cw.addMethod(ACC_PUBLIC, "iterator", "()L" + ITERATOR + ";", null);
+        code.newObject(checkedIterator);
+        code.dup();
+        code.aload(0);
+        code.getfield(name, field, "L" + fieldType + ";");
+        code.invokeinterface(fieldType, "iterator", "()L" + ITERATOR + ";");
+        code.aload(0);
+        code.getfield(name, "checker", "L" + FUNCTION + ";");
+        code.invokespecial(
+                checkedIterator, "<init>", "(L" + ITERATOR + ";" + CHECKER_CONSTRUCTOR_SUFFIX);
+        code.areturn();
+    }
+
+    private String internalName(TypeElement element) {
+        return elementUtils.getBinaryName(element).toString().replace('.', '/');
+    }
+
+    private String descriptor(TypeMirror type) {
+        StringBuilder buffer = new StringBuilder();
+        appendSignature(buffer, typeUtils.erasure(type));
+        return buffer.toString();
+    }
+
+    /** Returns the signature of the type parameterized with type variables or wildcards. */
+    private String classSignature(TypeModel type, Predicate<TypeParameterElement> named) {
+        StringBuilder buffer = new StringBuilder("L");
+        buffer.append(internalName(type.getElement()));
+        buffer.append('<');
+        for (TypeParameterElement typeParameter : type.getElement().getTypeParameters()) {
+            if (named.test(typeParameter)) {
+                buffer.append('T').append(typeParameter.getSimpleName()).append(';');
+            } else {
+                buffer.append('*');
+            }
+        }
+        buffer.append(">;");
+        return buffer.toString();
+    }
+
+    private String typeParametersSignature(TypeModel type) {
+        return typeParametersSignature(type.getElement().getTypeParameters());
+    }
+
+    private String typeParametersSignature(List<? extends TypeParameterElement> typeParameters) {
+        StringBuilder buffer = new StringBuilder("<");
+        for (TypeParameterElement typeParameter : typeParameters) {
+            buffer.append(typeParameter.getSimpleName());
+            List<? extends TypeMirror> bounds = typeParameter.getBounds();
+            if (bounds.isEmpty()) {
+                buffer.append(":L").append(OBJECT).append(';');
+            }
+            boolean first = true;
+            for (TypeMirror bound : bounds) {
+                if (first
+                        && bound.getKind() == TypeKind.DECLARED
+                        && ((DeclaredType) bound).asElement().getKind().isInterface()) {
+                    // Empty class bound
+                    buffer.append(':');
+                }
+                first = false;
+                buffer.append(':');
+                appendSignature(buffer, bound);
+            }
+        }
+        buffer.append('>');
+        return buffer.toString();
+    }
+
+    private void appendSignature(StringBuilder buffer, TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                buffer.append('Z');
+                break;
+            case BYTE:
+                buffer.append('B');
+                break;
+            case CHAR:
+                buffer.append('C');
+                break;
+            case SHORT:
+                buffer.append('S');
+                break;
+            case INT:
+                buffer.append('I');
+                break;
+            case LONG:
+                buffer.append('J');
+                break;
+            case FLOAT:
+                buffer.append('F');
+                break;
+            case DOUBLE:
+                buffer.append('D');
+                break;
+            case ARRAY:
+                buffer.append('[');
+                appendSignature(buffer, ((ArrayType) type).getComponentType());
+                break;
+            case TYPEVAR:
+                buffer.append('T');
+                buffer.append(((TypeVariable) type).asElement().getSimpleName());
+                buffer.append(';');
+                break;
+            case WILDCARD:
+                WildcardType wildcard = (WildcardType) type;
+                if (wildcard.getExtendsBound() != null) {
+                    buffer.append('+');
+                    appendSignature(buffer, wildcard.getExtendsBound());
+                } else if (wildcard.getSuperBound() != null) {
+                    buffer.append('-');
+                    appendSignature(buffer, wildcard.getSuperBound());
+                } else {
+                    buffer.append('*');
+                }
+                break;
+            case DECLARED:
+                DeclaredType declaredType = (DeclaredType) type;
+                buffer.append('L');
+                buffer.append(internalName((TypeElement) declaredType.asElement()));
+                List<? extends TypeMirror> typeArguments = declaredType.getTypeArguments();
+                if (!typeArguments.isEmpty()) {
+                    buffer.append('<');
+                    for (TypeMirror typeArgument : typeArguments) {
+                        appendSignature(buffer, typeArgument);
+                    }
+                    buffer.append('>');
+                }
+                buffer.append(';');
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported type " + type);
+        }
+    }
+}
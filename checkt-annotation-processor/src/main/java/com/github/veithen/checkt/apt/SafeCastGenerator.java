@@ -0,0 +1,628 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/** Generates the source code of the {@code SafeCast} class for a package. */
+final class SafeCastGenerator implements SourceProvider {
+    private final String packageName;
+    private final Collection<TypeModel> types;
+    private final boolean metrics;
+    private final CheckPolicy checkPolicy;
+    private final boolean split;
+
+    /**
+     * The names of the counter fields generated if metrics are enabled, and the corresponding keys
+     * in the map returned by {@code metrics()}.
+     */
+    private final List<String[]> counters = new ArrayList<>();
+
+    SafeCastGenerator(
+            String packageName,
+            Collection<TypeModel> types,
+            boolean metrics,
+            CheckPolicy checkPolicy,
+            boolean split) {
+        this.packageName = packageName;
+        this.types = types;
+        this.metrics = metrics;
+        this.checkPolicy = checkPolicy;
+        this.split = split;
+    }
+
+    @Override
+    public void writeTo(SourceWriter out) {
+        out.print("package ");
+        out.print(packageName);
+        out.println(";");
+        out.println();
+        boolean isPublic = types.stream().anyMatch(TypeModel::isPublic);
+        if (isPublic) {
+            out.print("public ");
+        }
+        out.println("final class SafeCast {");
+        out.println("    private SafeCast() {}");
+        writeChecksEnabled(out);
+        for (TypeModel type : types) {
+            if (split) {
+                String holder = getHolderName(type);
+                writeCastMethods(out, type, holder);
+                SourceWriter holderOut = new SourceWriter();
+                holderOut.print("    private ");
+                holderOut.print(holder);
+                holderOut.println("() {}");
+                writeCastMethods(holderOut, type, null);
+                out.println();
+                out.print("    private static final class ");
+                out.print(holder);
+                out.println(" {");
+                out.printIndented(holderOut);
+                out.println("    }");
+            } else {
+                writeCastMethods(out, type, null);
+            }
+        }
+        if (metrics) {
+            writeMetrics(out, isPublic);
+        }
+        writeCaster(out, isPublic);
+        writeCheckedViews(out);
+        out.println("}");
+    }
+
+    /**
+     * Returns the name of the nested class that holds the methods and the state for a type if
+     * {@code SafeCast} is split. The holder is only loaded and initialized when one of the methods
+     * for the type is used for the first time.
+     */
+    private static String getHolderName(TypeModel type) {
+        return type.getSimpleName() + "Casts";
+    }
+
+    private void writeCastMethods(SourceWriter out, TypeModel type, String holder) {
+        List<TokenModel> tokens = type.getTokens();
+        generateCastMethods(out, type, tokens, "", holder);
+        if (tokens.size() > 1) {
+            for (TokenModel token : tokens) {
+                generateCastMethods(
+                        out,
+                        type,
+                        Collections.singletonList(token),
+                        "By" + token.getSuffix(),
+                        holder);
+            }
+        }
+    }
+
+    /** Writes the field that determines whether the {@code cast} methods check the tokens. */
+    private void writeChecksEnabled(SourceWriter out) {
+        if (checkPolicy == CheckPolicy.ALWAYS) {
+            return;
+        }
+        out.println();
+        out.println("    private static final boolean CHECKS_ENABLED =");
+        if (checkPolicy == CheckPolicy.ASSERT) {
+            out.println("            SafeCast.class.desiredAssertionStatus();");
+        } else {
+            out.print("            !\"false\".equals(System.getProperty(\"");
+            out.print(CheckPolicy.SYSTEM_PROPERTY);
+            out.println("\"));");
+        }
+    }
+
+    /**
+     * Declares a pair of counters for the successes and failures of a generated method and returns
+     * the prefix of their names.
+     */
+    private String addCounters(SourceWriter out, TypeModel type, String method) {
+        String prefix =
+                Character.toLowerCase(type.getSimpleName().charAt(0))
+                        + type.getSimpleName().substring(1)
+                        + Character.toUpperCase(method.charAt(0))
+                        + method.substring(1);
+        out.println();
+        for (String outcome : new String[] {"Successes", "Failures"}) {
+            out.print("    private static final java.util.concurrent.atomic.LongAdder ");
+            out.print(prefix);
+            out.print(outcome);
+            out.println(" =");
+            out.println("            new java.util.concurrent.atomic.LongAdder();");
+            String field = prefix + outcome;
+            counters.add(
+                    new String[] {
+                        split ? getHolderName(type) + "." + field : field,
+                        type.getSimpleName() + "." + method + "." + outcome.toLowerCase()
+                    });
+        }
+        return prefix;
+    }
+
+    /** Writes the method that returns a snapshot of the counters. */
+    private void writeMetrics(SourceWriter out, boolean isPublic) {
+        out.println();
+        out.print("    ");
+        if (isPublic) {
+            out.print("public ");
+        }
+        out.println("static java.util.Map<String, Long> metrics() {");
+        out.println("        java.util.Map<String, Long> metrics =");
+        out.println("                new java.util.LinkedHashMap<>();");
+        for (String[] counter : counters) {
+            out.print("        metrics.put(\"");
+            out.print(counter[1]);
+            out.print("\", ");
+            out.print(counter[0]);
+            out.println(".sum());");
+        }
+        out.println("        return java.util.Collections.unmodifiableMap(metrics);");
+        out.println("    }");
+    }
+
+    /** Writes the base class of the objects returned by the {@code <type>Caster} methods. */
+    private static void writeCaster(SourceWriter out, boolean isPublic) {
+        out.println();
+        out.print("    ");
+        if (isPublic) {
+            out.print("public ");
+        }
+        out.println("abstract static class Caster<S, T>");
+        out.println("            implements java.util.function.Function<S, T>,");
+        out.println("                    java.util.function.Predicate<S> {");
+        out.println("        Caster() {}");
+        out.println();
+        out.println("        @Override");
+        out.println("        public final T apply(S o) {");
+        out.println("            if (!test(o)) {");
+        out.println("                throw new ClassCastException();");
+        out.println("            }");
+        out.println("            return (T)o;");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /** Writes the nested classes implementing the views returned by {@code castAll<Type>}. */
+    private static void writeCheckedViews(SourceWriter out) {
+        out.println();
+        out.println("    private static final class CheckedList<S, T>");
+        out.println("            extends java.util.AbstractList<T> {");
+        out.println("        private final java.util.List<? extends S> list;");
+        out.println("        private final java.util.function.Function<S, T> checker;");
+        out.println();
+        out.println("        CheckedList(java.util.List<? extends S> list,");
+        out.println("                java.util.function.Function<S, T> checker) {");
+        out.println("            this.list = list;");
+        out.println("            this.checker = checker;");
+        out.println("        }");
+        out.println();
+        out.println("        @Override");
+        out.println("        public T get(int index) {");
+        out.println("            return checker.apply(list.get(index));");
+        out.println("        }");
+        out.println();
+        out.println("        @Override");
+        out.println("        public int size() {");
+        out.println("            return list.size();");
+        out.println("        }");
+        out.println();
+        out.println("        @Override");
+        out.println("        public java.util.Iterator<T> iterator() {");
+        out.println("            return new CheckedIterator<S, T>(list.iterator(), checker);");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    private static final class CheckedIterator<S, T>");
+        out.println("            implements java.util.Iterator<T> {");
+        out.println("        private final java.util.Iterator<? extends S> iterator;");
+        out.println("        private final java.util.function.Function<S, T> checker;");
+        out.println();
+        out.println("        CheckedIterator(java.util.Iterator<? extends S> iterator,");
+        out.println("                java.util.function.Function<S, T> checker) {");
+        out.println("            this.iterator = iterator;");
+        out.println("            this.checker = checker;");
+        out.println("        }");
+        out.println();
+        out.println("        @Override");
+        out.println("        public boolean hasNext() {");
+        out.println("            return iterator.hasNext();");
+        out.println("        }");
+        out.println();
+        out.println("        @Override");
+        out.println("        public T next() {");
+        out.println("            return checker.apply(iterator.next());");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /**
+     * Generates the {@code cast}, {@code tryCast} and {@code isCastable} methods, the bulk variants
+     * {@code castAll<Type>} and {@code filter<Type>} as well as the {@code <type>Caster} factory
+     * for a given set of tokens. If a holder class is specified, the methods only delegate to the
+     * methods with the same signature in that class.
+     */
+    private void generateCastMethods(
+            SourceWriter out,
+            TypeModel type,
+            List<TokenModel> tokens,
+            String suffix,
+            String holder) {
+        String paramType = type.getParameterizedType(tokens);
+        String resultType = type.getParameterizedType();
+        String castCounters =
+                metrics && holder == null ? addCounters(out, type, "cast" + suffix) : null;
+        printMethodHeader(out, type, resultType, "cast" + suffix, paramType + " o", tokens);
+        if (holder != null) {
+            printDelegation(out, holder, "cast" + suffix, "o", tokens);
+        } else {
+            for (TokenModel token : tokens) {
+                out.print("        if (");
+                if (checkPolicy != CheckPolicy.ALWAYS) {
+                    out.print("CHECKS_ENABLED && (");
+                }
+                out.print(token.getName());
+                out.print(" == null || o.");
+                out.print(token.getMethodName());
+                out.print("() != ");
+                out.print(token.getName());
+                out.println(checkPolicy != CheckPolicy.ALWAYS ? ")) {" : ") {");
+                if (metrics) {
+                    out.print("            ");
+                    out.print(castCounters);
+                    out.println("Failures.increment();");
+                }
+                out.println("            throw new ClassCastException();");
+                out.println("        }");
+            }
+            if (metrics) {
+                out.print("        ");
+                out.print(castCounters);
+                out.println("Successes.increment();");
+            }
+            out.print("        return (");
+            out.print(type.getParameterizedType());
+            out.println(")o;");
+            out.println("    }");
+        }
+
+        printMethodHeader(out, type, resultType, "tryCast" + suffix, paramType + " o", tokens);
+        if (holder != null) {
+            printDelegation(out, holder, "tryCast" + suffix, "o", tokens);
+        } else {
+            out.print("        return isCastable");
+            printInvocationTail(out, suffix, tokens);
+            out.print(" ? (");
+            out.print(type.getParameterizedType());
+            out.println(")o : null;");
+            out.println("    }");
+        }
+
+        String isCastableCounters =
+                metrics && holder == null ? addCounters(out, type, "isCastable" + suffix) : null;
+        printMethodHeader(out, type, "boolean", "isCastable" + suffix, paramType + " o", tokens);
+        if (holder != null) {
+            printDelegation(out, holder, "isCastable" + suffix, "o", tokens);
+        } else {
+            out.print(metrics ? "        boolean result = " : "        return ");
+            out.print("o != null");
+            for (TokenModel token : tokens) {
+                out.println();
+                out.print("                && ");
+                out.print(token.getName());
+                out.print(" != null && o.");
+                out.print(token.getMethodName());
+                out.print("() == ");
+                out.print(token.getName());
+            }
+            out.println(";");
+            if (metrics) {
+                out.print("        (result ? ");
+                out.print(isCastableCounters);
+                out.print("Successes : ");
+                out.print(isCastableCounters);
+                out.println("Failures).increment();");
+                out.println("        return result;");
+            }
+            out.println("    }");
+        }
+
+        // The bulk variants accept collections with arbitrary type arguments because wildcard
+        // capture doesn't apply to the type arguments of the element type. They (and the caster
+        // factory) therefore only declare the type parameters that appear in the narrowed type.
+        String elementType = type.getWildcardType();
+        String narrowedType = type.getNarrowedType(tokens);
+        String narrowedTypeParameters =
+                ChecktProcessor.formatTypeParameters(type.getNarrowedTypeParameters(tokens));
+        String castAllName = "castAll" + type.getSimpleName() + suffix;
+        printMethodHeader(
+                out,
+                type,
+                narrowedTypeParameters,
+                "java.util.List<" + narrowedType + ">",
+                castAllName,
+                "java.util.List<? extends " + elementType + "> list",
+                tokens);
+        if (holder != null) {
+            printDelegation(out, holder, castAllName, "list", tokens);
+        } else {
+            out.print("        return new CheckedList<");
+            out.print(elementType);
+            out.print(", ");
+            out.print(narrowedType);
+            out.print(">(list, ");
+            printChecker(out, narrowedType, suffix, tokens);
+            out.println(");");
+            out.println("    }");
+        }
+
+        printMethodHeader(
+                out,
+                type,
+                narrowedTypeParameters,
+                "java.lang.Iterable<" + narrowedType + ">",
+                castAllName,
+                "java.lang.Iterable<? extends " + elementType + "> iterable",
+                tokens);
+        if (holder != null) {
+            printDelegation(out, holder, castAllName, "iterable", tokens);
+        } else {
+            out.print("        return () -> new CheckedIterator<");
+            out.print(elementType);
+            out.print(", ");
+            out.print(narrowedType);
+            out.print(">(iterable.iterator(), ");
+            printChecker(out, narrowedType, suffix, tokens);
+            out.println(");");
+            out.println("    }");
+        }
+
+        String filterName = "filter" + type.getSimpleName() + suffix;
+        printMethodHeader(
+                out,
+                type,
+                narrowedTypeParameters,
+                "java.util.stream.Stream<" + narrowedType + ">",
+                filterName,
+                "java.util.stream.Stream<? extends " + elementType + "> stream",
+                tokens);
+        if (holder != null) {
+            printDelegation(out, holder, filterName, "stream", tokens);
+        } else {
+            out.print("        return stream.filter(o -> isCastable");
+            printInvocationTail(out, suffix, tokens);
+            out.print(").map(o -> (");
+            out.print(narrowedType);
+            out.println(")o);");
+            out.println("    }");
+        }
+
+        String casterName =
+                Character.toLowerCase(type.getSimpleName().charAt(0))
+                        + type.getSimpleName().substring(1)
+                        + "Caster";
+        String casterType = "Caster<" + elementType + ", " + narrowedType + ">";
+        if (holder != null) {
+            printMethodHeader(
+                    out,
+                    type,
+                    narrowedTypeParameters,
+                    casterType,
+                    casterName + suffix,
+                    "",
+                    tokens);
+            printDelegation(out, holder, casterName + suffix, null, tokens);
+            return;
+        }
+        String cacheName = casterName + "s" + suffix;
+        boolean cached = isCasterCached(tokens);
+        if (cached) {
+            out.println();
+            out.print("    private static final ClassValue<Caster<?, ?>> ");
+            out.print(cacheName);
+            out.println(" =");
+            out.println("            new ClassValue<Caster<?, ?>>() {");
+            out.println("                @Override");
+            out.print("                protected Caster<?, ?> computeValue(Class<?> ");
+            out.print(tokens.get(0).getName());
+            out.println(") {");
+            out.print("                    return ");
+            printNewCaster(
+                    out,
+                    "                    ",
+                    "Caster<" + elementType + ", " + elementType + ">",
+                    elementType,
+                    suffix,
+                    "(Class)" + tokens.get(0).getName());
+            out.println(";");
+            out.println("                }");
+            out.println("            };");
+        }
+        printMethodHeader(
+                out, type, narrowedTypeParameters, casterType, casterName + suffix, "", tokens);
+        for (TokenModel token : tokens) {
+            out.print("        java.util.Objects.requireNonNull(");
+            out.print(token.getName());
+            out.println(");");
+        }
+        if (cached) {
+            out.print("        return (");
+            out.print(casterType);
+            out.print(")");
+            out.print(cacheName);
+            out.print(".get(");
+            out.print(tokens.get(0).getName());
+            out.println(");");
+        } else {
+            out.print("        return ");
+            SourceWriter tokenNames = new SourceWriter();
+            printTokenNames(tokenNames, tokens);
+            printNewCaster(out, "        ", casterType, elementType, suffix, tokenNames.toString());
+            out.println(";");
+        }
+        out.println("    }");
+    }
+
+    /**
+     * Determines whether the casters for the given tokens are cached. Only casters for a single
+     * {@link Class} token are cached, in a {@link ClassValue}: this compares tokens by identity
+     * (which is what the cast methods do) and doesn't prevent classes from being unloaded. For
+     * other tokens, the cache would have to reference the tokens strongly, since every caster
+     * references them; a new caster is therefore created each time.
+     */
+    static boolean isCasterCached(List<TokenModel> tokens) {
+        return tokens.size() == 1 && tokens.get(0).isClass();
+    }
+
+    /**
+     * Prints the lambda that checks the elements of the views returned by {@code castAll<Type>}.
+     * It uses {@code isCastable} instead of {@code cast} so that elements are checked regardless of
+     * the check policy, like the casters used by the class file backend.
+     */
+    private static void printChecker(
+            SourceWriter out, String narrowedType, String suffix, List<TokenModel> tokens) {
+        out.println("o -> {");
+        out.print("            if (!isCastable");
+        printInvocationTail(out, suffix, tokens);
+        out.println(") {");
+        out.println("                throw new ClassCastException();");
+        out.println("            }");
+        out.print("            return (");
+        out.print(narrowedType);
+        out.println(")o;");
+        out.print("        }");
+    }
+
+    /** Prints an expression that creates a caster that delegates to {@code isCastable}. */
+    private static void printNewCaster(
+            SourceWriter out,
+            String indent,
+            String casterType,
+            String elementType,
+            String suffix,
+            String arguments) {
+        out.print("new ");
+        out.print(casterType);
+        out.println("() {");
+        out.print(indent);
+        out.println("    @Override");
+        out.print(indent);
+        out.print("    public boolean test(");
+        out.print(elementType);
+        out.println(" o) {");
+        out.print(indent);
+        out.print("        return isCastable");
+        out.print(suffix);
+        out.print("(o, ");
+        out.print(arguments);
+        out.println(");");
+        out.print(indent);
+        out.println("    }");
+        out.print(indent);
+        out.print("}");
+    }
+
+    /**
+     * Prints the body of a method that delegates to the method with the same name in a holder
+     * class.
+     */
+    private static void printDelegation(
+            SourceWriter out, String holder, String name, String param, List<TokenModel> tokens) {
+        out.print("        return ");
+        out.print(holder);
+        out.print(".");
+        out.print(name);
+        out.print("(");
+        if (param != null) {
+            out.print(param);
+            out.print(", ");
+        }
+        printTokenNames(out, tokens);
+        out.println(");");
+        out.println("    }");
+    }
+
+    /** Prints the suffix and the argument list of an invocation of one of the generated methods. */
+    private static void printInvocationTail(
+            SourceWriter out, String suffix, List<TokenModel> tokens) {
+        out.print(suffix);
+        out.print("(o, ");
+        printTokenNames(out, tokens);
+        out.print(")");
+    }
+
+    private static void printTokenNames(SourceWriter out, List<TokenModel> tokens) {
+        boolean first = true;
+        for (TokenModel token : tokens) {
+            if (first) {
+                first = false;
+            } else {
+                out.print(", ");
+            }
+            out.print(token.getName());
+        }
+    }
+
+    private static void printMethodHeader(
+            SourceWriter out,
+            TypeModel type,
+            String returnType,
+            String name,
+            String param,
+            List<TokenModel> tokens) {
+        printMethodHeader(out, type, type.getTypeParameters(), returnType, name, param, tokens);
+    }
+
+    private static void printMethodHeader(
+            SourceWriter out,
+            TypeModel type,
+            String typeParameters,
+            String returnType,
+            String name,
+            String param,
+            List<TokenModel> tokens) {
+        out.println();
+        out.print("    ");
+        if (type.isPublic()) {
+            out.print("public ");
+        }
+        out.print("static ");
+        out.print(typeParameters);
+        out.print(" ");
+        out.print(returnType);
+        out.print(" ");
+        out.print(name);
+        out.print("(");
+        out.print(param);
+        boolean first = param.isEmpty();
+        for (TokenModel token : tokens) {
+            if (first) {
+                first = false;
+            } else {
+                out.print(", ");
+            }
+            out.print(token.getType());
+            out.print(" ");
+            out.print(token.getName());
+        }
+        out.println(") {");
+    }
+}
@@ -19,8 +19,6 @@
  */
 package com.github.veithen.checkt.apt;
 
-import java.io.IOException;
-
 public interface SourceProvider {
-    void writeTo(SourceWriter out) throws IOException;
+    void writeTo(SourceWriter out);
 }
@@ -19,32 +19,41 @@
  */
 package com.github.veithen.checkt.apt;
 
-import java.io.Closeable;
-import java.io.IOException;
-import java.io.Writer;
+import java.util.regex.Pattern;
 
-final class SourceWriter implements Closeable {
-    private final Writer out;
+/**
+ * Buffers the generated source code in memory so that it can be written to the {@link
+ * javax.annotation.processing.Filer} in a single call.
+ */
+final class SourceWriter {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final StringBuilder buffer = new StringBuilder(4096);
 
-    SourceWriter(Writer out) {
-        this.out = out;
+    void print(Object o) {
+        buffer.append(o);
     }
 
-    void print(Object o) throws IOException {
-        out.write(o.toString());
+    void println(Object o) {
+        buffer.append(o).append(LINE_SEPARATOR);
     }
 
-    void println(Object o) throws IOException {
-        print(o);
-        println();
+    void println() {
+        buffer.append(LINE_SEPARATOR);
     }
 
-    void println() throws IOException {
-        out.write(System.getProperty("line.separator"));
+    /** Appends the content of another writer, indenting every non-empty line by four spaces. */
+    void printIndented(SourceWriter other) {
+        for (String line : other.buffer.toString().split(Pattern.quote(LINE_SEPARATOR))) {
+            if (!line.isEmpty()) {
+                buffer.append("    ").append(line);
+            }
+            buffer.append(LINE_SEPARATOR);
+        }
     }
 
     @Override
-    public void close() throws IOException {
-        out.close();
+    public String toString() {
+        return buffer.toString();
     }
 }
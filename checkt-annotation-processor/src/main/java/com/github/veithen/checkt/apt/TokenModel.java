@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+import java.util.Set;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+/** Describes a method annotated with {@code TypeToken}. */
+final class TokenModel {
+    private final String methodName;
+    private final TypeMirror returnType;
+    private final String type;
+    private final String name;
+    private final String suffix;
+    private final Set<TypeParameterElement> constrainedTypeParameters;
+
+    TokenModel(ExecutableElement method, Set<TypeParameterElement> constrainedTypeParameters) {
+        methodName = method.getSimpleName().toString();
+        returnType = method.getReturnType();
+        type = returnType.toString();
+        name = ChecktProcessor.getTokenName(method, true);
+        suffix = ChecktProcessor.getTokenName(method, false);
+        this.constrainedTypeParameters = constrainedTypeParameters;
+    }
+
+    /** Returns the name of the method that returns the token. */
+    String getMethodName() {
+        return methodName;
+    }
+
+    /** Returns the type of the token. */
+    TypeMirror getReturnType() {
+        return returnType;
+    }
+
+    /** Determines whether the token is a {@link Class}. */
+    boolean isClass() {
+        return returnType.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) returnType).asElement())
+                        .getQualifiedName()
+                        .contentEquals("java.lang.Class");
+    }
+
+    /** Returns the formatted type of the token. */
+    String getType() {
+        return type;
+    }
+
+    /** Returns the name used for parameters that receive a value of the token. */
+    String getName() {
+        return name;
+    }
+
+    /** Returns the suffix used to build method names specific to the token. */
+    String getSuffix() {
+        return suffix;
+    }
+
+    /** Returns the type parameters of the enclosing type that are constrained by the token. */
+    Set<TypeParameterElement> getConstrainedTypeParameters() {
+        return constrainedTypeParameters;
+    }
+}
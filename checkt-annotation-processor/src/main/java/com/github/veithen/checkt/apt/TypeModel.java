@@ -0,0 +1,195 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.apt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+
+/**
+ * Describes a type that has methods annotated with {@code TypeToken}. Names that are used
+ * repeatedly when generating code for the type are formatted once and cached.
+ */
+final class TypeModel {
+    private final TypeElement element;
+    private final String simpleName;
+    private final boolean isPublic;
+    private final String typeParameters;
+    private final String parameterizedType;
+    private final List<TokenModel> tokens = new ArrayList<>();
+
+    TypeModel(TypeElement element) {
+        this.element = element;
+        simpleName = element.getSimpleName().toString();
+        isPublic = element.getModifiers().contains(Modifier.PUBLIC);
+        typeParameters = ChecktProcessor.formatTypeParameters(element.getTypeParameters());
+        parameterizedType =
+                simpleName
+                        + element.getTypeParameters().stream()
+                                .map(TypeParameterElement::getSimpleName)
+                                .collect(Collectors.joining(",", "<", ">"));
+    }
+
+    TypeElement getElement() {
+        return element;
+    }
+
+    String getSimpleName() {
+        return simpleName;
+    }
+
+    boolean isPublic() {
+        return isPublic;
+    }
+
+    /** Returns the type parameter declarations of the type, including their bounds. */
+    String getTypeParameters() {
+        return typeParameters;
+    }
+
+    /** Returns the type parameterized with its own type parameters. */
+    String getParameterizedType() {
+        return parameterizedType;
+    }
+
+    /**
+     * Returns the type parameterized with its own type parameters, except for the ones that are
+     * constrained by the given tokens, which are replaced by wildcards.
+     */
+    String getParameterizedType(List<TokenModel> tokens) {
+        return format(p -> !isConstrained(p, tokens));
+    }
+
+    /**
+     * Returns the type parameterized with the type parameters constrained by the given tokens, and
+     * wildcards for all other type parameters.
+     */
+    String getNarrowedType(List<TokenModel> tokens) {
+        return format(p -> isConstrained(p, tokens));
+    }
+
+    /** Returns the type parameterized with wildcards only. */
+    String getWildcardType() {
+        return format(p -> false);
+    }
+
+    /**
+     * Returns the type parameters used by {@link #getNarrowedType(List)}, i.e. the ones
+     * constrained by the given tokens, together with the type parameters referenced by their
+     * bounds. They are returned in declaration order.
+     */
+    List<TypeParameterElement> getNarrowedTypeParameters(List<TokenModel> tokens) {
+        Set<TypeParameterElement> used = new HashSet<>();
+        for (TypeParameterElement typeParameter : element.getTypeParameters()) {
+            if (isConstrained(typeParameter, tokens)) {
+                addTypeParameter(used, typeParameter);
+            }
+        }
+        return element.getTypeParameters().stream()
+                .filter(used::contains)
+                .collect(Collectors.toList());
+    }
+
+    private void addTypeParameter(Set<TypeParameterElement> used, TypeParameterElement p) {
+        if (used.add(p)) {
+            for (TypeMirror bound : p.getBounds()) {
+                addReferencedTypeParameters(used, bound);
+            }
+        }
+    }
+
+    private void addReferencedTypeParameters(Set<TypeParameterElement> used, TypeMirror type) {
+        switch (type.getKind()) {
+            case TYPEVAR:
+                TypeParameterElement p =
+                        (TypeParameterElement) ((TypeVariable) type).asElement();
+                if (p.getGenericElement().equals(element)) {
+                    addTypeParameter(used, p);
+                }
+                break;
+            case DECLARED:
+                for (TypeMirror typeArgument : ((DeclaredType) type).getTypeArguments()) {
+                    addReferencedTypeParameters(used, typeArgument);
+                }
+                break;
+            case ARRAY:
+                addReferencedTypeParameters(used, ((ArrayType) type).getComponentType());
+                break;
+            case WILDCARD:
+                WildcardType wildcard = (WildcardType) type;
+                if (wildcard.getExtendsBound() != null) {
+                    addReferencedTypeParameters(used, wildcard.getExtendsBound());
+                }
+                if (wildcard.getSuperBound() != null) {
+                    addReferencedTypeParameters(used, wildcard.getSuperBound());
+                }
+                break;
+            default:
+        }
+    }
+
+    /** Determines whether a type parameter is constrained by one of the given tokens. */
+    static boolean isConstrained(
+            TypeParameterElement typeParameter, List<TokenModel> tokens) {
+        return tokens.stream()
+                .anyMatch(t -> t.getConstrainedTypeParameters().contains(typeParameter));
+    }
+
+    private String format(Predicate<TypeParameterElement> named) {
+        StringBuilder buffer = new StringBuilder(simpleName);
+        buffer.append('<');
+        boolean first = true;
+        for (TypeParameterElement typeParameter : element.getTypeParameters()) {
+            if (first) {
+                first = false;
+            } else {
+                buffer.append(',');
+            }
+            if (named.test(typeParameter)) {
+                buffer.append(typeParameter.getSimpleName());
+            } else {
+                buffer.append('?');
+            }
+        }
+        buffer.append('>');
+        return buffer.toString();
+    }
+
+    void addToken(TokenModel token) {
+        tokens.add(token);
+    }
+
+    List<TokenModel> getTokens() {
+        return Collections.unmodifiableList(tokens);
+    }
+}
@@ -20,13 +20,130 @@
 package com.github.veithen.checkt.annotation;
 
 import static java.lang.annotation.ElementType.TYPE;
-import static java.lang.annotation.RetentionPolicy.SOURCE;
+import static java.lang.annotation.RetentionPolicy.CLASS;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 
-@Retention(SOURCE)
+/**
+ * Generates a container class that maps keys to values. The key and value types are the type
+ * arguments of the superclass of the annotated class (typically {@link
+ * java.util.AbstractMap.SimpleEntry}), and they are linked by the type parameters of the annotated
+ * class. The container has typed {@code get}, {@code containsKey}, {@code size} and {@code forEach}
+ * methods, and unless it is {@link #frozen()}, {@code put}, {@code remove} and {@code
+ * computeIfAbsent} methods. {@code forEach} takes an implementation of the nested {@code Visitor}
+ * interface, whose generic {@code visit} method receives the entries without {@link
+ * java.util.Map.Entry} objects being allocated. Null values are treated as absent: putting a null
+ * value removes the entry. The visitor must not modify the container, and containers that aren't
+ * concurrent must not be modified while {@code forEach} is in progress. Containers keyed by {@link
+ * Class} keep their values in {@link ClassValue} slots; looking up a class that has no entry
+ * creates an empty slot for that class, which is retained as long as both the container and the
+ * class are reachable.
+ */
+@Retention(CLASS)
 @Target(TYPE)
 public @interface Container {
     String value();
+
+    /**
+     * Specifies whether the generated container is thread safe. Concurrent containers support
+     * lock-free reads and use CAS based writes. They also have a {@code putIfAbsent} method. Note
+     * that the mapping function passed to {@code computeIfAbsent} may be invoked concurrently for
+     * the same key, in which case only one of the results is retained. For containers that aren't
+     * keyed by {@link Class} or an enum type, writes update the slot of the entry with a CAS and
+     * only take a lock when the hash table needs to be rebuilt; {@code forEach} doesn't see a
+     * snapshot, but may or may not reflect concurrent modifications.
+     */
+    boolean concurrent() default false;
+
+    /**
+     * The expected number of entries. The hash table used by the generated container is sized so
+     * that it can hold that many entries without being resized. This is ignored for containers
+     * keyed by {@link Class}, which don't use a hash table.
+     */
+    int expectedSize() default 8;
+
+    /**
+     * Specifies whether the generated container is immutable. Instead of a {@code put} method,
+     * frozen containers have a builder that accepts instances of the annotated class (which must
+     * implement {@link java.util.Map.Entry}). The builder computes a collision-free layout so that
+     * lookups need a single probe. Frozen containers are thread safe.
+     */
+    boolean frozen() default false;
+
+    /**
+     * Specifies whether the generated container only holds weak references to its keys. Entries
+     * are removed once their key has been garbage collected; the cleanup is done as part of the
+     * {@code get} and {@code put} operations. As with {@link java.util.WeakHashMap}, values must
+     * not strongly reference their keys. Containers keyed by {@link Class} or by an enum type never
+     * hold references to their keys, so this has no effect for them. For concurrent containers with
+     * weak keys, operations are synchronized. This can't be combined with {@link #frozen()}.
+     */
+    boolean weakKeys() default false;
+
+    /**
+     * The maximum number of entries, or 0 if the container is unbounded. When an entry is added to
+     * a bounded container that is full, an existing entry is evicted as specified by {@link
+     * #eviction()}. Storage for the maximum number of entries is allocated when the container is
+     * created. Bounded containers have an additional {@code get} method that takes a {@code
+     * Loader} to compute missing values; they are synchronized if they are concurrent. This can't
+     * be combined with {@link #frozen()} or {@link #weakKeys()}.
+     */
+    int maximumSize() default 0;
+
+    /** The eviction policy used by bounded containers. */
+    Eviction eviction() default Eviction.LRU;
+
+    /**
+     * Specifies whether the generated container maps each key to multiple values. Instead of
+     * {@code put}, {@code get}, {@code remove} and {@code computeIfAbsent}, multi-valued containers
+     * have {@code add}, {@code getAll} and {@code removeAll} methods, and {@code forEach} visits
+     * every value separately. A single value is stored inline; additional values are kept in an
+     * immutable array that is copied when a value is added, so that lists returned by {@code
+     * getAll} are snapshots. {@code size} returns the number of keys. For concurrent multi-valued
+     * containers, {@code add} and {@code removeAll} are synchronized, but reads remain lock-free.
+     * This can't be combined with {@link #frozen()} or {@link #maximumSize()}.
+     */
+    boolean multiValued() default false;
+
+    /**
+     * Specifies whether the generated container compares keys using {@link Object#equals(Object)}
+     * and {@link Object#hashCode()} instead of identity, so that keys don't need to be canonical
+     * instances. The hash code of each key is stored in the table: lookups invoke {@code
+     * hashCode} once on the given key and only invoke {@code equals} if the stored hash codes
+     * match. Key types should therefore compute their hash code once, e.g. in the constructor. Keys
+     * must not be modified in a way that affects {@code equals} while they are in the container.
+     * Containers keyed by {@link Class} or by an enum type always compare keys by identity, so this
+     * has no effect for them. This can't be combined with {@link #frozen()}, {@link #weakKeys()} or
+     * {@link #maximumSize()}.
+     */
+    boolean equality() default false;
+
+    /**
+     * Specifies whether the generated container supports lookups that take the type hierarchy into
+     * account. This is only supported for containers keyed by {@link Class}. The container then has
+     * a {@code resolve} method that returns the value for the given class or, if there is none, for
+     * its closest supertype that has a value. Supertypes are searched breadth first; at the same
+     * distance, the superclass comes before the interfaces, which are searched in declaration
+     * order. The result is cached per class until an entry is added or removed. Since {@code
+     * resolve} may return a value stored for a supertype, the value type should only use the type
+     * parameter of the key contravariantly, e.g. {@code Function<? super T, String>}. This can't be
+     * combined with {@link #frozen()}, {@link #maximumSize()} or {@link #multiValued()}.
+     */
+    boolean hierarchical() default false;
+
+    /**
+     * Specifies whether the generated container is an immutable context that can be bound to the
+     * current thread for the duration of a task. Instead of {@code put} and {@code remove}, scoped
+     * containers have {@code with} and {@code without} methods that return a new context and leave
+     * the original one unchanged. Entries are kept in a linked list whose nodes are shared between
+     * contexts, so that adding an entry only allocates a node and a context; this is intended for a
+     * small number of entries. The container has a static {@code empty} method, and a static {@code
+     * current} method that returns the context bound to the current thread (or the empty context).
+     * Its {@code run} and {@code call} methods bind the context while executing a task. If the
+     * source version is 25 or higher, the context is bound using {@code java.lang.ScopedValue};
+     * otherwise a {@link ThreadLocal} is used. Metrics aren't collected for scoped containers. This
+     * can't be combined with any of the other options.
+     */
+    boolean scoped() default false;
 }
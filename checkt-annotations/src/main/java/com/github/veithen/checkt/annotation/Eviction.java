@@ -0,0 +1,33 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.annotation;
+
+/** Eviction policies for bounded containers. See {@link Container#maximumSize()}. */
+public enum Eviction {
+    /** Evicts the least recently used entry. Every access moves the entry to the front. */
+    LRU,
+
+    /**
+     * Approximates LRU using the CLOCK algorithm. An access only sets a reference bit on the entry;
+     * to find an entry to evict, a hand sweeps over the entries and clears the reference bits
+     * until it reaches an entry that hasn't been accessed since the previous sweep.
+     */
+    CLOCK
+}
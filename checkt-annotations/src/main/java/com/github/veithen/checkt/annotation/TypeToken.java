@@ -20,11 +20,11 @@
 package com.github.veithen.checkt.annotation;
 
 import static java.lang.annotation.ElementType.METHOD;
-import static java.lang.annotation.RetentionPolicy.SOURCE;
+import static java.lang.annotation.RetentionPolicy.CLASS;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
 
-@Retention(SOURCE)
+@Retention(CLASS)
 @Target(METHOD)
 public @interface TypeToken {}
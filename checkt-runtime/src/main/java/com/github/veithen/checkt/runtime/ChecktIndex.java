@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.runtime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Provides access to the index written by the annotation processor. The index lists the classes
+ * annotated with {@code Container} (together with the generated container classes) and the
+ * classes that have methods annotated with {@code TypeToken}, so that they can be discovered
+ * without scanning the class path. Every module processed by the annotation processor contributes
+ * a {@value #RESOURCE_NAME} resource; {@link #load(ClassLoader)} merges all of them.
+ *
+ * <p>The resource is a UTF-8 text file. Lines starting with {@code #} are comments. All other
+ * lines have one of the following forms, where class names are binary names:
+ *
+ * <pre>
+ * container &lt;annotated class&gt; &lt;container class&gt;
+ * typetoken &lt;class&gt;
+ * </pre>
+ */
+public final class ChecktIndex {
+    /** The name of the index resource. */
+    public static final String RESOURCE_NAME = "META-INF/checkt/index";
+
+    private final Map<String, String> containers;
+    private final Set<String> typeTokenClasses;
+
+    private ChecktIndex(Map<String, String> containers, Set<String> typeTokenClasses) {
+        this.containers = Collections.unmodifiableMap(containers);
+        this.typeTokenClasses = Collections.unmodifiableSet(typeTokenClasses);
+    }
+
+    /**
+     * Loads and merges all index resources visible to the given class loader. Classes are not
+     * loaded.
+     *
+     * @param classLoader the class loader
+     * @return the merged index
+     * @throws IOException if an index resource can't be read or is malformed
+     */
+    public static ChecktIndex load(ClassLoader classLoader) throws IOException {
+        Map<String, String> containers = new TreeMap<>();
+        Set<String> typeTokenClasses = new TreeSet<>();
+        Enumeration<URL> urls = classLoader.getResources(RESOURCE_NAME);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            try (InputStream in = url.openStream()) {
+                BufferedReader reader =
+                        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] parts = line.split("\\s+");
+                    if (parts[0].equals("container") && parts.length == 3) {
+                        containers.put(parts[1], parts[2]);
+                    } else if (parts[0].equals("typetoken") && parts.length == 2) {
+                        typeTokenClasses.add(parts[1]);
+                    } else {
+                        throw new IOException("Malformed line in " + url + ": " + line);
+                    }
+                }
+            }
+        }
+        return new ChecktIndex(containers, typeTokenClasses);
+    }
+
+    /**
+     * Returns the classes annotated with {@code Container}.
+     *
+     * @return a map with the binary names of the annotated classes as keys and the binary names of
+     *     the corresponding generated container classes as values
+     */
+    public Map<String, String> getContainers() {
+        return containers;
+    }
+
+    /**
+     * Returns the classes that have methods annotated with {@code TypeToken}.
+     *
+     * @return the binary names of the classes
+     */
+    public Set<String> getTypeTokenClasses() {
+        return typeTokenClasses;
+    }
+}
@@ -0,0 +1,240 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt.stress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.veithen.checkt.apt.ChecktProcessor;
+
+/**
+ * Compiles a synthetic code base with and without the annotation processor and checks that the
+ * time spent in the processor stays below a given fraction of the compilation time without it.
+ * The size of the code base, the threshold and the output directory are configured using system
+ * properties.
+ */
+public class ProcessorStressTest {
+    private static final Pattern NANOS_PATTERN =
+            Pattern.compile("\"(?:safeCast|container)Nanos\": (\\d+)");
+
+    private static final class Result {
+        final long nanos;
+        final long peakHeapBytes;
+
+        Result(long nanos, long peakHeapBytes) {
+            this.nanos = nanos;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Generates the code base. Every type has a method annotated with {@code TypeToken}, and every
+     * fifth type also has a corresponding {@code Container} entry type.
+     */
+    private static List<File> generateSources(Path dir, int packages, int typesPerPackage)
+            throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int p = 0; p < packages; p++) {
+            String pkg = "stress.p" + p;
+            Path pkgDir = dir.resolve("stress").resolve("p" + p);
+            for (int t = 0; t < typesPerPackage; t++) {
+                String type = "Type" + t;
+                Path file = pkgDir.resolve(type + ".java");
+                write(
+                        file,
+                        "package "
+                                + pkg
+                                + ";\n\n"
+                                + "public class "
+                                + type
+                                + "<T> {\n"
+                                + "    private final Class<T> type;\n\n"
+                                + "    public "
+                                + type
+                                + "(Class<T> type) {\n"
+                                + "        this.type = type;\n"
+                                + "    }\n\n"
+                                + "    @com.github.veithen.checkt.annotation.TypeToken\n"
+                                + "    public Class<T> getType() {\n"
+                                + "        return type;\n"
+                                + "    }\n"
+                                + "}\n");
+                files.add(file.toFile());
+                if (t % 5 == 0) {
+                    Path entryFile = pkgDir.resolve(type + "Value.java");
+                    write(
+                            entryFile,
+                            "package "
+                                    + pkg
+                                    + ";\n\n"
+                                    + "@com.github.veithen.checkt.annotation.Container(\""
+                                    + type
+                                    + "Values\")\n"
+                                    + "public class "
+                                    + type
+                                    + "Value<T>\n"
+                                    + "        extends java.util.AbstractMap.SimpleEntry<"
+                                    + type
+                                    + "<T>, T> {\n"
+                                    + "    private static final long serialVersionUID = 1L;\n\n"
+                                    + "    public "
+                                    + type
+                                    + "Value("
+                                    + type
+                                    + "<T> key, T value) {\n"
+                                    + "        super(key, value);\n"
+                                    + "    }\n"
+                                    + "}\n");
+                    files.add(entryFile.toFile());
+                }
+            }
+        }
+        return files;
+    }
+
+    private static List<MemoryPoolMXBean> getHeapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    private static Result compile(List<File> sources, Path outputDirectory, String... options)
+            throws IOException {
+        Files.createDirectories(outputDirectory);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> allOptions = new ArrayList<>();
+        allOptions.add("-d");
+        allOptions.add(outputDirectory.toString());
+        allOptions.add("-s");
+        allOptions.add(outputDirectory.toString());
+        allOptions.add("-cp");
+        allOptions.add(System.getProperty("java.class.path"));
+        allOptions.addAll(Arrays.asList(options));
+        List<MemoryPoolMXBean> heapPools = getHeapPools();
+        System.gc();
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+        long nanos;
+        try (StandardJavaFileManager fileManager =
+                compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            long start = System.nanoTime();
+            boolean success =
+                    compiler.getTask(
+                                    null,
+                                    fileManager,
+                                    diagnostics,
+                                    allOptions,
+                                    null,
+                                    fileManager.getJavaFileObjectsFromFiles(sources))
+                            .call();
+            nanos = System.nanoTime() - start;
+            assertThat(success).as(diagnostics.getDiagnostics().toString()).isTrue();
+        }
+        long peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+        return new Result(nanos, peakHeapBytes);
+    }
+
+    @Test
+    public void testProcessorOverhead() throws Exception {
+        int packages = Integer.getInteger("stress.packages", 200);
+        int typesPerPackage = Integer.getInteger("stress.typesPerPackage", 20);
+        double maxOverhead = Double.parseDouble(System.getProperty("stress.maxOverhead", "1.0"));
+        Path outputDirectory =
+                Paths.get(System.getProperty("stress.outputDirectory", "target/stress"));
+        List<File> sources =
+                generateSources(outputDirectory.resolve("src"), packages, typesPerPackage);
+
+        // Compile once to warm up the compiler.
+        compile(sources, outputDirectory.resolve("warmup"), "-proc:none");
+        Result baseline = compile(sources, outputDirectory.resolve("baseline"), "-proc:none");
+        Path statsFile = outputDirectory.resolve("stats.json");
+        Result processed =
+                compile(
+                        sources,
+                        outputDirectory.resolve("processed"),
+                        "-processor",
+                        ChecktProcessor.class.getName(),
+                        "-Acheckt.stats=" + statsFile);
+
+        long processorNanos = 0;
+        Matcher matcher =
+                NANOS_PATTERN.matcher(
+                        new String(Files.readAllBytes(statsFile), StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            processorNanos += Long.parseLong(matcher.group(1));
+        }
+        double overhead = (double) processorNanos / baseline.nanos;
+        String summary =
+                String.format(
+                        "%d source files in %d packages%n"
+                                + "without processor: %.1f ms, peak heap %d MB%n"
+                                + "with processor:    %.1f ms, peak heap %d MB%n"
+                                + "time spent in processor: %.1f ms (%.1f%% of baseline,"
+                                + " maximum %.1f%%)%n",
+                        sources.size(),
+                        packages,
+                        baseline.nanos / 1e6,
+                        baseline.peakHeapBytes >> 20,
+                        processed.nanos / 1e6,
+                        processed.peakHeapBytes >> 20,
+                        processorNanos / 1e6,
+                        overhead * 100,
+                        maxOverhead * 100);
+        System.out.print(summary);
+        write(outputDirectory.resolve("summary.txt"), summary);
+        assertThat(overhead).as(summary).isLessThanOrEqualTo(maxOverhead);
+    }
+}
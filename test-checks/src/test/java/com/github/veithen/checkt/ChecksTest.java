@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.jupiter.api.Test;
+
+public class ChecksTest {
+    @Test
+    public void testChecksEnabledByDefault() {
+        Descriptor<?> descriptor = new Descriptor<>(String.class);
+        assertThatThrownBy(() -> SafeCast.cast(descriptor, Integer.class))
+                .isInstanceOf(ClassCastException.class);
+    }
+
+    @Test
+    public void testChecksDisabled() throws Exception {
+        // The system property is read when SafeCast is initialized; load a fresh copy.
+        URL location = SafeCast.class.getProtectionDomain().getCodeSource().getLocation();
+        System.setProperty("checkt.checks", "false");
+        try (URLClassLoader classLoader =
+                new URLClassLoader(new URL[] {location}, ClassLoader.getPlatformClassLoader())) {
+            Class<?> descriptorClass = classLoader.loadClass(Descriptor.class.getName());
+            Object descriptor =
+                    descriptorClass.getConstructor(Class.class).newInstance(String.class);
+            Class<?> safeCast = classLoader.loadClass(SafeCast.class.getName());
+            assertThat(
+                            safeCast.getMethod("cast", descriptorClass, Class.class)
+                                    .invoke(null, descriptor, Integer.class))
+                    .isSameAs(descriptor);
+            assertThat(
+                            safeCast.getMethod("isCastable", descriptorClass, Class.class)
+                                    .invoke(null, descriptor, Integer.class))
+                    .isEqualTo(false);
+        } finally {
+            System.clearProperty("checkt.checks");
+        }
+    }
+}
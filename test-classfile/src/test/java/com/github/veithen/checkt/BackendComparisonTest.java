@@ -0,0 +1,368 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.veithen.checkt.apt.ChecktProcessor;
+
+/**
+ * Compiles the sample types of the test module with both backends and checks that the generated
+ * {@code SafeCast} classes have the same methods and return the same results for a matrix of
+ * arguments. This is done for each check policy; for the conditional policies, the checks are
+ * disabled at runtime. The location of the sample sources and the output directory are configured
+ * using system properties.
+ */
+public class BackendComparisonTest {
+    private static final String[] SAMPLES = {
+        "Attribute", "Descriptor", "Relation", "SomeClass", "Tagged", "TypeName"
+    };
+
+    private static final List<Class<?>> BULK_TYPES =
+            Arrays.asList(List.class, Iterable.class, Stream.class);
+
+    private static Path compile(String backend, String checks) throws Exception {
+        Path sourceDirectory =
+                Paths.get(System.getProperty("checkt.testSources", "../test/src/test/java"));
+        Path outputDirectory =
+                Paths.get(System.getProperty("checkt.outputDirectory", "target/backends"))
+                        .resolve(backend + "-" + checks);
+        Files.createDirectories(outputDirectory);
+        List<File> sources = new ArrayList<>();
+        for (String sample : SAMPLES) {
+            sources.add(
+                    sourceDirectory
+                            .resolve("com/github/veithen/checkt/" + sample + ".java")
+                            .toFile());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options =
+                Arrays.asList(
+                        "-d",
+                        outputDirectory.toString(),
+                        "-s",
+                        outputDirectory.toString(),
+                        "-cp",
+                        System.getProperty("java.class.path"),
+                        "-processor",
+                        ChecktProcessor.class.getName(),
+                        "-Acheckt.backend=" + backend,
+                        "-Acheckt.checks=" + checks);
+        try (StandardJavaFileManager fileManager =
+                compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            boolean success =
+                    compiler.getTask(
+                                    null,
+                                    fileManager,
+                                    diagnostics,
+                                    options,
+                                    null,
+                                    fileManager.getJavaFileObjectsFromFiles(sources))
+                            .call();
+            assertThat(success).as(diagnostics.getDiagnostics().toString()).isTrue();
+        }
+        return outputDirectory;
+    }
+
+    private static Map<String, Object> values(Object... namesAndValues) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            values.put((String) namesAndValues[i], namesAndValues[i + 1]);
+        }
+        values.put("null", null);
+        return values;
+    }
+
+    /** Creates the arguments passed to the generated methods, indexed by parameter type. */
+    private static Map<Class<?>, Map<String, Object>> createArguments(ClassLoader classLoader)
+            throws Exception {
+        Class<?> attribute = classLoader.loadClass(Attribute.class.getName());
+        Class<?> descriptor = classLoader.loadClass(Descriptor.class.getName());
+        Class<?> relation = classLoader.loadClass(Relation.class.getName());
+        Class<?> someClass = classLoader.loadClass(SomeClass.class.getName());
+        Class<?> tagged = classLoader.loadClass(Tagged.class.getName());
+        Class<?> typeName = classLoader.loadClass(TypeName.class.getName());
+        Object name1 = typeName.getConstructor(String.class).newInstance("string");
+        Object name2 = typeName.getConstructor(String.class).newInstance("string");
+        Map<Class<?>, Map<String, Object>> arguments = new LinkedHashMap<>();
+        arguments.put(Class.class, values("String", String.class, "Integer", Integer.class));
+        arguments.put(typeName, values("name1", name1, "name2", name2));
+        arguments.put(
+                attribute,
+                values(
+                        "Attribute<String>",
+                        Proxy.newProxyInstance(
+                                classLoader,
+                                new Class<?>[] {attribute},
+                                (proxy, method, args) -> String.class)));
+        arguments.put(
+                descriptor,
+                values(
+                        "Descriptor<String>",
+                        descriptor.getConstructor(Class.class).newInstance(String.class)));
+        arguments.put(
+                relation,
+                values(
+                        "Relation<String,Integer>",
+                        relation.getConstructor(Class.class, Class.class)
+                                .newInstance(String.class, Integer.class)));
+        arguments.put(
+                someClass,
+                values(
+                        "SomeClass<String,?>",
+                        someClass.getConstructor(Class.class).newInstance(String.class)));
+        arguments.put(
+                tagged,
+                values("Tagged<name1>", tagged.getConstructor(typeName).newInstance(name1)));
+        return arguments;
+    }
+
+    private static String invoke(Method method, Object target, Object... args) throws Exception {
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            return ex.getCause().getClass().getSimpleName();
+        }
+        if (result == null || result instanceof Boolean) {
+            return String.valueOf(result);
+        } else if (args.length > 0 && result == args[0]) {
+            return "same";
+        } else {
+            return result.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Describes the elements of a list or iterable returned by a bulk method, by accessing all of
+     * them and recording their positions in the source list or the exceptions thrown.
+     */
+    private static String describeElements(Object result, List<?> source) {
+        List<String> elements = new ArrayList<>();
+        if (result instanceof List<?>) {
+            List<?> list = (List<?>) result;
+            for (int i = 0; i < list.size(); i++) {
+                try {
+                    elements.add(describeElement(list.get(i), source));
+                } catch (RuntimeException ex) {
+                    elements.add(ex.getClass().getSimpleName());
+                }
+            }
+        }
+        Iterator<?> it = ((Iterable<?>) result).iterator();
+        while (it.hasNext()) {
+            try {
+                elements.add(describeElement(it.next(), source));
+            } catch (RuntimeException ex) {
+                elements.add(ex.getClass().getSimpleName());
+            }
+        }
+        return elements.toString();
+    }
+
+    private static String describeElement(Object element, List<?> source) {
+        for (int i = 0; i < source.size(); i++) {
+            if (source.get(i) == element) {
+                return "#" + i;
+            }
+        }
+        return "unknown";
+    }
+
+    /**
+     * Invokes a method with all combinations of arguments and records the outcomes. The casters
+     * returned by caster factories are tested against all objects of the matching type. The bulk
+     * methods are invoked with a list (or a stream) of all objects of the matching type.
+     */
+    private static void invokeAll(
+            Method method,
+            Map<Class<?>, Map<String, Object>> arguments,
+            Object[] args,
+            int index,
+            String label,
+            Map<String, String> outcomes)
+            throws Exception {
+        if (index == 0 && BULK_TYPES.contains(method.getParameterTypes()[0])) {
+            Type elementType =
+                    ((WildcardType)
+                                    ((ParameterizedType) method.getGenericParameterTypes()[0])
+                                            .getActualTypeArguments()[0])
+                            .getUpperBounds()[0];
+            args[0] =
+                    new ArrayList<>(
+                            arguments.get(((ParameterizedType) elementType).getRawType()).values());
+            invokeAll(method, arguments, args, 1, "all", outcomes);
+            return;
+        }
+        if (index < args.length) {
+            for (Map.Entry<String, Object> argument :
+                    arguments.get(method.getParameterTypes()[index]).entrySet()) {
+                args[index] = argument.getValue();
+                invokeAll(
+                        method,
+                        arguments,
+                        args,
+                        index + 1,
+                        index == 0 ? argument.getKey() : label + ", " + argument.getKey(),
+                        outcomes);
+            }
+            return;
+        }
+        String key = method.getName() + "(" + label + ")";
+        if (BULK_TYPES.contains(method.getParameterTypes()[0])) {
+            List<?> source = (List<?>) args[0];
+            Object[] bulkArgs = args.clone();
+            if (method.getParameterTypes()[0] == Stream.class) {
+                bulkArgs[0] = source.stream();
+            }
+            Object result;
+            try {
+                result = method.invoke(null, bulkArgs);
+            } catch (InvocationTargetException ex) {
+                outcomes.put(key, ex.getCause().getClass().getSimpleName());
+                return;
+            }
+            if (result instanceof Stream<?>) {
+                result = ((Stream<?>) result).collect(Collectors.toList());
+            }
+            outcomes.put(key, describeElements(result, source));
+            return;
+        }
+        if (!Predicate.class.isAssignableFrom(method.getReturnType())) {
+            outcomes.put(key, invoke(method, null, args));
+            return;
+        }
+        Object caster;
+        try {
+            caster = method.invoke(null, args);
+        } catch (InvocationTargetException ex) {
+            outcomes.put(key, ex.getCause().getClass().getSimpleName());
+            return;
+        }
+        Type objectType =
+                ((ParameterizedType) method.getGenericReturnType()).getActualTypeArguments()[0];
+        Method test = Predicate.class.getMethod("test", Object.class);
+        for (Map.Entry<String, Object> object :
+                arguments.get(((ParameterizedType) objectType).getRawType()).entrySet()) {
+            outcomes.put(
+                    key + ".test(" + object.getKey() + ")",
+                    invoke(test, caster, object.getValue()));
+        }
+    }
+
+    /**
+     * Loads and initializes the {@code SafeCast} class with assertions disabled and the {@code
+     * checkt.checks} system property set to {@code false}, so that conditional checks are
+     * disabled.
+     */
+    private static Class<?> loadSafeCast(ClassLoader classLoader) throws Exception {
+        String checks = System.setProperty("checkt.checks", "false");
+        try {
+            return Class.forName(SafeCast.class.getName(), true, classLoader);
+        } finally {
+            if (checks == null) {
+                System.clearProperty("checkt.checks");
+            } else {
+                System.setProperty("checkt.checks", checks);
+            }
+        }
+    }
+
+    private static Map<String, String> run(Path classes) throws Exception {
+        Map<String, String> outcomes = new LinkedHashMap<>();
+        try (URLClassLoader classLoader =
+                new URLClassLoader(
+                        new URL[] {classes.toUri().toURL()},
+                        ClassLoader.getPlatformClassLoader())) {
+            classLoader.setDefaultAssertionStatus(false);
+            Map<Class<?>, Map<String, Object>> arguments = createArguments(classLoader);
+            Class<?> safeCast = loadSafeCast(classLoader);
+            List<Method> methods = new ArrayList<>();
+            for (Method method : safeCast.getDeclaredMethods()) {
+                if (Modifier.isPublic(method.getModifiers())) {
+                    methods.add(method);
+                }
+            }
+            methods.sort(Comparator.comparing(Method::toGenericString));
+            for (Method method : methods) {
+                outcomes.put(method.toGenericString(), "declared");
+                invokeAll(
+                        method, arguments, new Object[method.getParameterCount()], 0, "", outcomes);
+            }
+        }
+        return outcomes;
+    }
+
+    private static void compare(String checks) throws Exception {
+        Map<String, String> source = run(compile("source", checks));
+        Map<String, String> classfile = run(compile("classfile", checks));
+        assertThat(source).hasSizeGreaterThan(100);
+        assertThat(classfile).isEqualTo(source);
+    }
+
+    @Test
+    public void testSameBehavior() throws Exception {
+        compare("always");
+    }
+
+    @Test
+    public void testSameBehaviorWithAssertPolicy() throws Exception {
+        compare("assert");
+    }
+
+    @Test
+    public void testSameBehaviorWithGuardedPolicy() throws Exception {
+        compare("guarded");
+    }
+}
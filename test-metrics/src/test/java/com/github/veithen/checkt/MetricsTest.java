@@ -0,0 +1,68 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricsTest {
+    @Test
+    public void testSafeCastMetrics() {
+        Descriptor<?> descriptor = new Descriptor<>(String.class);
+        Map<String, Long> before = SafeCast.metrics();
+        SafeCast.cast(descriptor, String.class);
+        assertThatThrownBy(() -> SafeCast.cast(descriptor, Integer.class))
+                .isInstanceOf(ClassCastException.class);
+        assertThatThrownBy(() -> SafeCast.cast(descriptor, Integer.class))
+                .isInstanceOf(ClassCastException.class);
+        SafeCast.tryCast(descriptor, Integer.class);
+        Map<String, Long> after = SafeCast.metrics();
+        assertThat(after.get("Descriptor.cast.successes") - before.get("Descriptor.cast.successes"))
+                .isEqualTo(1L);
+        assertThat(after.get("Descriptor.cast.failures") - before.get("Descriptor.cast.failures"))
+                .isEqualTo(2L);
+        assertThat(
+                        after.get("Descriptor.isCastable.failures")
+                                - before.get("Descriptor.isCastable.failures"))
+                .isEqualTo(1L);
+        assertThat(after).containsKey("Relation.castByType1.successes");
+    }
+
+    @Test
+    public void testContainerMetrics() {
+        DescriptorDefaults defaults = new DescriptorDefaults();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor2 = new Descriptor<>(String.class);
+        defaults.put(descriptor1, "foo");
+        defaults.get(descriptor1);
+        defaults.get(descriptor1);
+        defaults.get(descriptor2);
+        defaults.computeIfAbsent(descriptor2, d -> "bar");
+        Map<String, Long> metrics = defaults.metrics();
+        assertThat(metrics.get("gets")).isEqualTo(4L);
+        assertThat(metrics.get("hits")).isEqualTo(2L);
+        assertThat(metrics.get("misses")).isEqualTo(2L);
+        assertThat(metrics.get("size")).isEqualTo(2L);
+    }
+}
@@ -0,0 +1,57 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.jupiter.api.Test;
+
+public class SplitTest {
+    private static class TrackingClassLoader extends URLClassLoader {
+        TrackingClassLoader(URL location) {
+            super(new URL[] {location}, ClassLoader.getPlatformClassLoader());
+        }
+
+        boolean isLoaded(String name) {
+            return findLoadedClass(name) != null;
+        }
+    }
+
+    @Test
+    public void testHoldersLoadedOnDemand() throws Exception {
+        URL location = SafeCast.class.getProtectionDomain().getCodeSource().getLocation();
+        String safeCastName = SafeCast.class.getName();
+        try (TrackingClassLoader classLoader = new TrackingClassLoader(location)) {
+            Class<?> descriptorClass = classLoader.loadClass(Descriptor.class.getName());
+            Object descriptor =
+                    descriptorClass.getConstructor(Class.class).newInstance(String.class);
+            Class<?> safeCast = classLoader.loadClass(safeCastName);
+            assertThat(
+                            safeCast.getMethod("isCastable", descriptorClass, Class.class)
+                                    .invoke(null, descriptor, String.class))
+                    .isEqualTo(true);
+            assertThat(classLoader.isLoaded(safeCastName + "$DescriptorCasts")).isTrue();
+            assertThat(classLoader.isLoaded(safeCastName + "$AttributeCasts")).isFalse();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.veithen.checkt.runtime.ChecktIndex;
+
+public class ChecktIndexTest {
+    @Test
+    public void testLoad() throws Exception {
+        ChecktIndex index = ChecktIndex.load(ChecktIndexTest.class.getClassLoader());
+        assertThat(index.getContainers())
+                .containsEntry(DescriptorValue.class.getName(), DescriptorValues.class.getName());
+        assertThat(index.getContainers())
+                .containsEntry(
+                        FrozenEnumTranslatorMapping.class.getName(),
+                        FrozenEnumTranslators.class.getName());
+        assertThat(index.getTypeTokenClasses())
+                .contains(Descriptor.class.getName(), Relation.class.getName());
+        assertThat(index.getTypeTokenClasses()).hasSize(5);
+    }
+
+    private static Path createIndex(String content) throws IOException {
+        Path dir = Files.createTempDirectory("checkt");
+        Path file = dir.resolve(ChecktIndex.RESOURCE_NAME);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return dir;
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        Path dir = createIndex("# comment\ncontainer com.example.Entry com.example.Entries\n");
+        try (URLClassLoader classLoader =
+                new URLClassLoader(
+                        new URL[] {dir.toUri().toURL()},
+                        ChecktIndexTest.class.getClassLoader())) {
+            ChecktIndex index = ChecktIndex.load(classLoader);
+            assertThat(index.getContainers())
+                    .containsEntry("com.example.Entry", "com.example.Entries");
+            assertThat(index.getContainers())
+                    .containsEntry(
+                            DescriptorValue.class.getName(), DescriptorValues.class.getName());
+        }
+    }
+
+    @Test
+    public void testMalformed() throws Exception {
+        Path dir = createIndex("container com.example.Entry\n");
+        try (URLClassLoader classLoader =
+                new URLClassLoader(new URL[] {dir.toUri().toURL()}, null)) {
+            assertThatThrownBy(() -> ChecktIndex.load(classLoader))
+                    .isInstanceOf(IOException.class);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class ClockDescriptorCacheTest {
+    @Test
+    public void testSecondChance() {
+        ClockDescriptorCache cache = new ClockDescriptorCache();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor2 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor3 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor4 = new Descriptor<>(String.class);
+        cache.put(descriptor1, "a");
+        cache.put(descriptor2, "b");
+        cache.put(descriptor3, "c");
+        assertThat(cache.get(descriptor1)).isEqualTo("a");
+        cache.put(descriptor4, "d");
+        assertThat(cache.get(descriptor2)).isNull();
+        assertThat(cache.get(descriptor1)).isEqualTo("a");
+        assertThat(cache.get(descriptor3)).isEqualTo("c");
+        assertThat(cache.get(descriptor4)).isEqualTo("d");
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        ClockDescriptorCache cache = new ClockDescriptorCache();
+        Descriptor<?>[] descriptors = new Descriptor<?>[10];
+        for (int i = 0; i < descriptors.length; i++) {
+            Descriptor<Integer> descriptor = new Descriptor<>(Integer.class);
+            descriptors[i] = descriptor;
+            cache.put(descriptor, i);
+        }
+        int count = 0;
+        for (Descriptor<?> descriptor : descriptors) {
+            if (cache.get(descriptor) != null) {
+                count++;
+            }
+        }
+        assertThat(count).isEqualTo(3);
+    }
+
+    @Test
+    public void testRemove() {
+        ClockDescriptorCache cache = new ClockDescriptorCache();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor2 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor3 = new Descriptor<>(String.class);
+        cache.put(descriptor1, "a");
+        cache.put(descriptor2, "b");
+        cache.put(descriptor3, "c");
+        assertThat(cache.remove(descriptor1)).isEqualTo("a");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get(descriptor2)).isEqualTo("b");
+        assertThat(cache.get(descriptor3)).isEqualTo("c");
+        cache.put(descriptor1, "a");
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.get(descriptor1)).isEqualTo("a");
+    }
+}
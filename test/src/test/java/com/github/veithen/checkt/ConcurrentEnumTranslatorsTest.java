@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.DayOfWeek;
+import java.time.Month;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentEnumTranslatorsTest {
+    @Test
+    public void testPutAndGet() {
+        ConcurrentEnumTranslators translators = new ConcurrentEnumTranslators();
+        Function<String, Month> translator = Month::valueOf;
+        assertThat(translators.put(Month.class, translator)).isNull();
+        assertThat(translators.get(Month.class)).isSameAs(translator);
+        assertThat(translators.get(DayOfWeek.class)).isNull();
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        ConcurrentEnumTranslators translators = new ConcurrentEnumTranslators();
+        Function<String, Month> translator1 = Month::valueOf;
+        Function<String, Month> translator2 = Month::valueOf;
+        assertThat(translators.putIfAbsent(Month.class, translator1)).isNull();
+        assertThat(translators.putIfAbsent(Month.class, translator2)).isSameAs(translator1);
+        assertThat(translators.get(Month.class)).isSameAs(translator1);
+    }
+
+    @Test
+    public void testComputeIfAbsent() {
+        ConcurrentEnumTranslators translators = new ConcurrentEnumTranslators();
+        Function<String, DayOfWeek> translator =
+                translators.computeIfAbsent(DayOfWeek.class, type -> s -> Enum.valueOf(type, s));
+        assertThat(translator.apply("MONDAY")).isSameAs(DayOfWeek.MONDAY);
+        assertThat(
+                        translators.computeIfAbsent(
+                                DayOfWeek.class, type -> s -> DayOfWeek.SUNDAY))
+                .isSameAs(translator);
+    }
+
+    @Test
+    public void testRemoveSizeAndForEach() {
+        ConcurrentEnumTranslators translators = new ConcurrentEnumTranslators();
+        Function<String, Month> monthTranslator = Month::valueOf;
+        translators.put(Month.class, monthTranslator);
+        translators.put(DayOfWeek.class, DayOfWeek::valueOf);
+        assertThat(translators.size()).isEqualTo(2);
+        assertThat(translators.remove(DayOfWeek.class)).isNotNull();
+        assertThat(translators.containsKey(DayOfWeek.class)).isFalse();
+        assertThat(translators.containsKey(Month.class)).isTrue();
+        assertThat(translators.size()).isEqualTo(1);
+        Map<Class<?>, Object> entries = new HashMap<>();
+        translators.forEach(
+                new ConcurrentEnumTranslators.Visitor() {
+                    @Override
+                    public <T extends Enum<?>> void visit(
+                            Class<T> key, Function<String, T> value) {
+                        entries.put(key, value);
+                    }
+                });
+        assertThat(entries).hasSize(1);
+        assertThat(entries).containsEntry(Month.class, monthTranslator);
+        translators.put(DayOfWeek.class, DayOfWeek::valueOf);
+        assertThat(translators.size()).isEqualTo(2);
+    }
+}
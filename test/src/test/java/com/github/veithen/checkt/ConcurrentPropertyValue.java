@@ -0,0 +1,33 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import java.util.AbstractMap;
+
+import com.github.veithen.checkt.annotation.Container;
+
+@Container(value = "ConcurrentPropertyValues", concurrent = true, equality = true)
+public class ConcurrentPropertyValue<T> extends AbstractMap.SimpleEntry<Property<T>, T> {
+    private static final long serialVersionUID = 1L;
+
+    public ConcurrentPropertyValue(Property<T> key, T value) {
+        super(key, value);
+    }
+}
@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentPropertyValuesTest {
+    @Test
+    public void testLookupWithEqualKey() {
+        ConcurrentPropertyValues values = new ConcurrentPropertyValues();
+        values.put(new Property<>("name", String.class), "foo");
+        assertThat(values.get(new Property<>("name", String.class))).isEqualTo("foo");
+        assertThat(values.putIfAbsent(new Property<>("name", String.class), "bar"))
+                .isEqualTo("foo");
+        assertThat(values.computeIfAbsent(new Property<>("count", Integer.class), p -> 1))
+                .isEqualTo(1);
+        assertThat(values.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testConcurrentPuts() throws Exception {
+        ConcurrentPropertyValues values = new ConcurrentPropertyValues();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t;
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    for (int i = offset; i < 1000; i += 4) {
+                                        values.put(new Property<>("p" + i, Integer.class), i);
+                                    }
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(values.size()).isEqualTo(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(values.get(new Property<>("p" + i, Integer.class))).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        ConcurrentPropertyValues values = new ConcurrentPropertyValues();
+        Map<Property<Integer>, Integer> expected = new HashMap<>();
+        Random random = new Random(1234);
+        for (int i = 0; i < 10000; i++) {
+            Property<Integer> property = new Property<>("p" + random.nextInt(50), Integer.class);
+            if (random.nextBoolean()) {
+                assertThat(values.put(property, i)).isEqualTo(expected.put(property, i));
+            } else {
+                assertThat(values.remove(property)).isEqualTo(expected.remove(property));
+            }
+            assertThat(values.size()).isEqualTo(expected.size());
+            assertThat(values.containsKey(property)).isEqualTo(expected.containsKey(property));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.DayOfWeek;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class DayOfWeekLabelsTest {
+    @Test
+    public void testPutAndGet() {
+        DayOfWeekLabels labels = new DayOfWeekLabels();
+        assertThat(labels.put(DayOfWeek.MONDAY, "Mon")).isNull();
+        assertThat(labels.put(DayOfWeek.SUNDAY, "Sun")).isNull();
+        assertThat(labels.get(DayOfWeek.MONDAY)).isEqualTo("Mon");
+        assertThat(labels.get(DayOfWeek.SUNDAY)).isEqualTo("Sun");
+        assertThat(labels.get(DayOfWeek.TUESDAY)).isNull();
+        assertThat(labels.put(DayOfWeek.MONDAY, "Monday")).isEqualTo("Mon");
+        assertThat(labels.get(DayOfWeek.MONDAY)).isEqualTo("Monday");
+    }
+
+    @Test
+    public void testRemoveSizeAndForEach() {
+        DayOfWeekLabels labels = new DayOfWeekLabels();
+        labels.put(DayOfWeek.MONDAY, "Mon");
+        labels.put(DayOfWeek.FRIDAY, "Fri");
+        labels.put(DayOfWeek.SUNDAY, "Sun");
+        assertThat(labels.remove(DayOfWeek.FRIDAY)).isEqualTo("Fri");
+        assertThat(labels.remove(DayOfWeek.FRIDAY)).isNull();
+        assertThat(labels.containsKey(DayOfWeek.FRIDAY)).isFalse();
+        assertThat(labels.containsKey(DayOfWeek.SUNDAY)).isTrue();
+        assertThat(labels.size()).isEqualTo(2);
+        Map<DayOfWeek, String> entries = new EnumMap<>(DayOfWeek.class);
+        labels.forEach(entries::put);
+        assertThat(entries).hasSize(2);
+        assertThat(entries).containsEntry(DayOfWeek.MONDAY, "Mon");
+        assertThat(entries).containsEntry(DayOfWeek.SUNDAY, "Sun");
+    }
+}
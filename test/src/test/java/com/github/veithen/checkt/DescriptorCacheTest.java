@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class DescriptorCacheTest {
+    private int loadCount;
+
+    private <T> T load(Descriptor<T> descriptor) {
+        loadCount++;
+        try {
+            return descriptor.getType().getConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        DescriptorCache cache = new DescriptorCache();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor2 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor3 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor4 = new Descriptor<>(String.class);
+        cache.put(descriptor1, "a");
+        cache.put(descriptor2, "b");
+        cache.put(descriptor3, "c");
+        assertThat(cache.get(descriptor1)).isEqualTo("a");
+        cache.put(descriptor4, "d");
+        assertThat(cache.get(descriptor2)).isNull();
+        assertThat(cache.get(descriptor1)).isEqualTo("a");
+        assertThat(cache.get(descriptor3)).isEqualTo("c");
+        assertThat(cache.get(descriptor4)).isEqualTo("d");
+    }
+
+    @Test
+    public void testLoader() {
+        DescriptorCache cache = new DescriptorCache();
+        Descriptor<StringBuilder> descriptor = new Descriptor<>(StringBuilder.class);
+        StringBuilder value = cache.get(descriptor, this::load);
+        assertThat(value).isNotNull();
+        assertThat(cache.get(descriptor, this::load)).isSameAs(value);
+        assertThat(loadCount).isEqualTo(1);
+    }
+
+    @Test
+    public void testNullKey() {
+        DescriptorCache cache = new DescriptorCache();
+        Object value = cache.get(null);
+        assertThat(value).isNull();
+        assertThatThrownBy(() -> cache.put(null, "foo")).isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    public void testAgainstLinkedHashMap() {
+        DescriptorCache cache = new DescriptorCache();
+        Map<Descriptor<Integer>, Integer> expected =
+                new LinkedHashMap<Descriptor<Integer>, Integer>(16, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(
+                            Map.Entry<Descriptor<Integer>, Integer> eldest) {
+                        return size() > 3;
+                    }
+                };
+        List<Descriptor<Integer>> descriptors = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            descriptors.add(new Descriptor<>(Integer.class));
+        }
+        Random random = new Random(1234);
+        for (int i = 0; i < 10000; i++) {
+            Descriptor<Integer> descriptor = descriptors.get(random.nextInt(descriptors.size()));
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertThat(cache.put(descriptor, i)).isEqualTo(expected.put(descriptor, i));
+                    break;
+                case 1:
+                    assertThat(cache.get(descriptor)).isEqualTo(expected.get(descriptor));
+                    break;
+                default:
+                    assertThat(cache.remove(descriptor)).isEqualTo(expected.remove(descriptor));
+            }
+            assertThat(cache.size()).isEqualTo(expected.size());
+        }
+    }
+
+    @Test
+    public void testContainsKeyDoesNotAffectEviction() {
+        DescriptorCache cache = new DescriptorCache();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor2 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor3 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor4 = new Descriptor<>(String.class);
+        cache.put(descriptor1, "a");
+        cache.put(descriptor2, "b");
+        cache.put(descriptor3, "c");
+        assertThat(cache.containsKey(descriptor1)).isTrue();
+        cache.put(descriptor4, "d");
+        assertThat(cache.containsKey(descriptor1)).isFalse();
+    }
+
+    @Test
+    public void testForEach() {
+        DescriptorCache cache = new DescriptorCache();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<Integer> descriptor2 = new Descriptor<>(Integer.class);
+        cache.put(descriptor1, "foo");
+        cache.put(descriptor2, 42);
+        Map<Object, Object> entries = new IdentityHashMap<>();
+        cache.forEach(
+                new DescriptorCache.Visitor() {
+                    @Override
+                    public <T> void visit(Descriptor<T> key, T value) {
+                        entries.put(key, value);
+                    }
+                });
+        assertThat(entries).hasSize(2);
+        assertThat(entries).containsEntry(descriptor1, "foo");
+        assertThat(entries).containsEntry(descriptor2, 42);
+    }
+}
@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class DescriptorDefaultsTest {
+    @Test
+    public void testPutAndGet() {
+        DescriptorDefaults defaults = new DescriptorDefaults();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor2 = new Descriptor<>(String.class);
+        assertThat(defaults.put(descriptor1, "foo")).isNull();
+        assertThat(defaults.get(descriptor1)).isEqualTo("foo");
+        assertThat(defaults.get(descriptor2)).isNull();
+        assertThat(defaults.put(descriptor1, "bar")).isEqualTo("foo");
+        assertThat(defaults.get(descriptor1)).isEqualTo("bar");
+    }
+
+    @Test
+    public void testGrowBeyondExpectedSize() {
+        DescriptorDefaults defaults = new DescriptorDefaults();
+        List<Descriptor<Integer>> descriptors = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Descriptor<Integer> descriptor = new Descriptor<>(Integer.class);
+            descriptors.add(descriptor);
+            defaults.put(descriptor, i);
+        }
+        for (int i = 0; i < descriptors.size(); i++) {
+            assertThat(defaults.get(descriptors.get(i))).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testNullKey() {
+        DescriptorDefaults defaults = new DescriptorDefaults();
+        Object value = defaults.get(null);
+        assertThat(value).isNull();
+        assertThatThrownBy(() -> defaults.put(null, "foo"))
+                .isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    public void testComputeIfAbsent() {
+        DescriptorDefaults defaults = new DescriptorDefaults();
+        Descriptor<Integer> descriptor = new Descriptor<>(Integer.class);
+        assertThat(defaults.computeIfAbsent(descriptor, d -> 1)).isEqualTo(1);
+        assertThat(defaults.computeIfAbsent(descriptor, d -> 2)).isEqualTo(1);
+        assertThat(defaults.computeIfAbsent(new Descriptor<>(String.class), d -> null)).isNull();
+        assertThat(defaults.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRemoveAndContainsKey() {
+        DescriptorDefaults defaults = new DescriptorDefaults();
+        Descriptor<String> descriptor = new Descriptor<>(String.class);
+        assertThat(defaults.remove(descriptor)).isNull();
+        defaults.put(descriptor, "foo");
+        assertThat(defaults.containsKey(descriptor)).isTrue();
+        assertThat(defaults.size()).isEqualTo(1);
+        assertThat(defaults.remove(descriptor)).isEqualTo("foo");
+        assertThat(defaults.containsKey(descriptor)).isFalse();
+        assertThat(defaults.size()).isEqualTo(0);
+        defaults.put(descriptor, "foo");
+        assertThat(defaults.put(descriptor, null)).isEqualTo("foo");
+        assertThat(defaults.containsKey(descriptor)).isFalse();
+        assertThat(defaults.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testForEach() {
+        DescriptorDefaults defaults = new DescriptorDefaults();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<Integer> descriptor2 = new Descriptor<>(Integer.class);
+        defaults.put(descriptor1, "foo");
+        defaults.put(descriptor2, 42);
+        Map<Object, Object> entries = new IdentityHashMap<>();
+        defaults.forEach(
+                new DescriptorDefaults.Visitor() {
+                    @Override
+                    public <T> void visit(Descriptor<T> key, T value) {
+                        assertThat(value).isInstanceOf(key.getType());
+                        entries.put(key, value);
+                    }
+                });
+        assertThat(entries).hasSize(2);
+        assertThat(entries).containsEntry(descriptor1, "foo");
+        assertThat(entries).containsEntry(descriptor2, 42);
+    }
+
+    @Test
+    public void testAgainstIdentityHashMap() {
+        DescriptorDefaults defaults = new DescriptorDefaults();
+        Map<Descriptor<Integer>, Integer> expected = new IdentityHashMap<>();
+        List<Descriptor<Integer>> descriptors = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            descriptors.add(new Descriptor<>(Integer.class));
+        }
+        Random random = new Random(1234);
+        for (int i = 0; i < 10000; i++) {
+            Descriptor<Integer> descriptor = descriptors.get(random.nextInt(descriptors.size()));
+            if (random.nextBoolean()) {
+                assertThat(defaults.put(descriptor, i)).isEqualTo(expected.put(descriptor, i));
+            } else {
+                assertThat(defaults.remove(descriptor)).isEqualTo(expected.remove(descriptor));
+            }
+            assertThat(defaults.size()).isEqualTo(expected.size());
+        }
+        for (Descriptor<Integer> descriptor : descriptors) {
+            assertThat(defaults.get(descriptor)).isEqualTo(expected.get(descriptor));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+public class DescriptorHandlersTest {
+    @Test
+    public void testAddAndForEach() {
+        DescriptorHandlers handlers = new DescriptorHandlers();
+        Descriptor<String> descriptor = new Descriptor<>(String.class);
+        List<String> received = new ArrayList<>();
+        handlers.add(descriptor, s -> received.add("1:" + s));
+        handlers.add(descriptor, s -> received.add("2:" + s));
+        for (Consumer<String> handler : handlers.getAll(descriptor)) {
+            handler.accept("foo");
+        }
+        assertThat(received).containsExactly("1:foo", "2:foo");
+        handlers.forEach(
+                new DescriptorHandlers.Visitor() {
+                    @Override
+                    public <T> void visit(Descriptor<T> key, Consumer<T> value) {
+                        value.accept(key.getType().cast(null));
+                    }
+                });
+        assertThat(received).containsExactly("1:foo", "2:foo", "1:null", "2:null");
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        DescriptorHandlers handlers = new DescriptorHandlers();
+        Descriptor<Integer> descriptor = new Descriptor<>(Integer.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    for (int i = 0; i < 250; i++) {
+                                        handlers.add(descriptor, v -> {});
+                                    }
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(handlers.getAll(descriptor)).hasSize(1000);
+    }
+}
@@ -0,0 +1,171 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class DescriptorValuesTest {
+    @Test
+    public void testPutAndGet() {
+        DescriptorValues values = new DescriptorValues();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor2 = new Descriptor<>(String.class);
+        assertThat(values.put(descriptor1, "foo")).isNull();
+        assertThat(values.get(descriptor1)).isEqualTo("foo");
+        assertThat(values.get(descriptor2)).isNull();
+        assertThat(values.put(descriptor1, "bar")).isEqualTo("foo");
+        assertThat(values.get(descriptor1)).isEqualTo("bar");
+    }
+
+    @Test
+    public void testPutIfAbsentAndComputeIfAbsent() {
+        DescriptorValues values = new DescriptorValues();
+        Descriptor<Integer> descriptor = new Descriptor<>(Integer.class);
+        assertThat(values.computeIfAbsent(descriptor, d -> 1)).isEqualTo(1);
+        assertThat(values.computeIfAbsent(descriptor, d -> 2)).isEqualTo(1);
+        assertThat(values.putIfAbsent(descriptor, 3)).isEqualTo(1);
+        assertThat(values.get(descriptor)).isEqualTo(1);
+    }
+
+    @Test
+    public void testConcurrentPuts() throws Exception {
+        DescriptorValues values = new DescriptorValues();
+        List<Descriptor<Integer>> descriptors = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            descriptors.add(new Descriptor<>(Integer.class));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t;
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    for (int i = offset; i < descriptors.size(); i += 4) {
+                                        values.put(descriptors.get(i), i);
+                                    }
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < descriptors.size(); i++) {
+            assertThat(values.get(descriptors.get(i))).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testConcurrentPutsAndRemoves() throws Exception {
+        DescriptorValues values = new DescriptorValues();
+        List<List<Descriptor<Integer>>> retained = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                List<Descriptor<Integer>> descriptors = new ArrayList<>();
+                retained.add(descriptors);
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    // Every key is new, so that the table is rebuilt repeatedly.
+                                    for (int i = 0; i < 20000; i++) {
+                                        Descriptor<Integer> descriptor =
+                                                new Descriptor<>(Integer.class);
+                                        assertThat(values.putIfAbsent(descriptor, i)).isNull();
+                                        if (i % 100 == 0) {
+                                            descriptors.add(descriptor);
+                                        } else {
+                                            assertThat(values.remove(descriptor)).isEqualTo(i);
+                                        }
+                                    }
+                                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(values.size()).isEqualTo(800);
+        for (List<Descriptor<Integer>> descriptors : retained) {
+            for (int i = 0; i < descriptors.size(); i++) {
+                assertThat(values.get(descriptors.get(i))).isEqualTo(i * 100);
+            }
+        }
+    }
+
+    @Test
+    public void testForEach() {
+        DescriptorValues values = new DescriptorValues();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<Integer> descriptor2 = new Descriptor<>(Integer.class);
+        values.put(descriptor1, "foo");
+        values.put(descriptor2, 42);
+        Map<Object, Object> entries = new IdentityHashMap<>();
+        values.forEach(
+                new DescriptorValues.Visitor() {
+                    @Override
+                    public <T> void visit(Descriptor<T> key, T value) {
+                        entries.put(key, value);
+                    }
+                });
+        assertThat(entries).hasSize(2);
+        assertThat(entries).containsEntry(descriptor1, "foo");
+        assertThat(entries).containsEntry(descriptor2, 42);
+    }
+
+    @Test
+    public void testAgainstIdentityHashMap() {
+        DescriptorValues values = new DescriptorValues();
+        Map<Descriptor<Integer>, Integer> expected = new IdentityHashMap<>();
+        List<Descriptor<Integer>> descriptors = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            descriptors.add(new Descriptor<>(Integer.class));
+        }
+        Random random = new Random(1234);
+        for (int i = 0; i < 10000; i++) {
+            Descriptor<Integer> descriptor = descriptors.get(random.nextInt(descriptors.size()));
+            if (random.nextBoolean()) {
+                assertThat(values.put(descriptor, i)).isEqualTo(expected.put(descriptor, i));
+            } else {
+                assertThat(values.remove(descriptor)).isEqualTo(expected.remove(descriptor));
+            }
+            assertThat(values.size()).isEqualTo(expected.size());
+            assertThat(values.containsKey(descriptor))
+                    .isEqualTo(expected.containsKey(descriptor));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.DayOfWeek;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+public class EnumTranslatorRegistryTest {
+    @Test
+    public void testAddAndGetAll() {
+        EnumTranslatorRegistry registry = new EnumTranslatorRegistry();
+        Function<String, Month> translator1 = Month::valueOf;
+        Function<String, Month> translator2 = s -> Month.of(Integer.parseInt(s));
+        Function<String, Month> translator3 = s -> Month.JANUARY;
+        assertThat(registry.getAll(Month.class)).isEmpty();
+        registry.add(Month.class, translator1);
+        assertThat(registry.getAll(Month.class)).containsExactly(translator1);
+        registry.add(Month.class, translator2);
+        List<Function<String, Month>> snapshot = registry.getAll(Month.class);
+        registry.add(Month.class, translator3);
+        assertThat(snapshot).containsExactly(translator1, translator2);
+        assertThat(registry.getAll(Month.class))
+                .containsExactly(translator1, translator2, translator3);
+        assertThat(registry.getAll(DayOfWeek.class)).isEmpty();
+        assertThat(registry.getAll(Month.class).get(1).apply("3")).isSameAs(Month.MARCH);
+    }
+
+    @Test
+    public void testGetAllIsUnmodifiable() {
+        EnumTranslatorRegistry registry = new EnumTranslatorRegistry();
+        registry.add(Month.class, Month::valueOf);
+        registry.add(Month.class, Month::valueOf);
+        assertThatThrownBy(() -> registry.getAll(Month.class).add(Month::valueOf))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void testRemoveAllAndSize() {
+        EnumTranslatorRegistry registry = new EnumTranslatorRegistry();
+        Function<String, Month> translator = Month::valueOf;
+        registry.add(Month.class, translator);
+        registry.add(DayOfWeek.class, DayOfWeek::valueOf);
+        registry.add(DayOfWeek.class, DayOfWeek::valueOf);
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(registry.removeAll(DayOfWeek.class)).hasSize(2);
+        assertThat(registry.removeAll(DayOfWeek.class)).isEmpty();
+        assertThat(registry.containsKey(DayOfWeek.class)).isFalse();
+        assertThat(registry.size()).isEqualTo(1);
+        assertThat(registry.removeAll(Month.class)).containsExactly(translator);
+        assertThat(registry.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testForEach() {
+        EnumTranslatorRegistry registry = new EnumTranslatorRegistry();
+        registry.add(Month.class, Month::valueOf);
+        registry.add(Month.class, s -> Month.of(Integer.parseInt(s)));
+        registry.add(DayOfWeek.class, DayOfWeek::valueOf);
+        List<Object> results = new ArrayList<>();
+        registry.forEach(
+                new EnumTranslatorRegistry.Visitor() {
+                    @Override
+                    public <T extends Enum<?>> void visit(
+                            Class<T> key, Function<String, T> value) {
+                        results.add(key.getSimpleName());
+                    }
+                });
+        assertThat(results).containsExactlyInAnyOrder("Month", "Month", "DayOfWeek");
+    }
+
+    @Test
+    public void testNullValue() {
+        EnumTranslatorRegistry registry = new EnumTranslatorRegistry();
+        assertThatThrownBy(() -> registry.add(Month.class, null))
+                .isInstanceOf(NullPointerException.class);
+    }
+}
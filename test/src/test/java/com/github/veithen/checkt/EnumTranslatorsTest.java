@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.time.DayOfWeek;
+import java.time.Month;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+public class EnumTranslatorsTest {
+    public enum PluginEnum {
+        VALUE
+    }
+
+    /** Loads its own copy of {@link PluginEnum}, as a plugin class loader would. */
+    private static final class PluginClassLoader extends ClassLoader {
+        PluginClassLoader() {
+            super(EnumTranslatorsTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(PluginEnum.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    try (InputStream in =
+                            getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                        byte[] b = in.readAllBytes();
+                        c = defineClass(name, b, 0, b.length);
+                    } catch (IOException ex) {
+                        throw new ClassNotFoundException(name, ex);
+                    }
+                }
+                return c;
+            }
+        }
+    }
+
+    @Test
+    public void testPutAndGet() {
+        EnumTranslators translators = new EnumTranslators();
+        Function<String, Month> translator = Month::valueOf;
+        assertThat(translators.put(Month.class, translator)).isNull();
+        assertThat(translators.get(Month.class)).isSameAs(translator);
+        assertThat(translators.get(DayOfWeek.class)).isNull();
+    }
+
+    @Test
+    public void testPutReturnsPreviousValue() {
+        EnumTranslators translators = new EnumTranslators();
+        Function<String, Month> translator1 = Month::valueOf;
+        Function<String, Month> translator2 = s -> Month.of(Integer.parseInt(s));
+        translators.put(Month.class, translator1);
+        assertThat(translators.put(Month.class, translator2)).isSameAs(translator1);
+        assertThat(translators.get(Month.class).apply("3")).isSameAs(Month.MARCH);
+    }
+
+    @Test
+    public void testInstancesAreIndependent() {
+        EnumTranslators translators1 = new EnumTranslators();
+        EnumTranslators translators2 = new EnumTranslators();
+        translators1.put(Month.class, Month::valueOf);
+        assertThat(translators2.get(Month.class)).isNull();
+    }
+
+    @Test
+    public void testNullKey() {
+        EnumTranslators translators = new EnumTranslators();
+        translators.put(Month.class, Month::valueOf);
+        Object value = translators.get(null);
+        assertThat(value).isNull();
+        assertThat(translators.containsKey(null)).isFalse();
+    }
+
+    @Test
+    public void testRemoveSizeAndForEach() {
+        EnumTranslators translators = new EnumTranslators();
+        Function<String, Month> monthTranslator = Month::valueOf;
+        translators.put(Month.class, monthTranslator);
+        translators.put(DayOfWeek.class, DayOfWeek::valueOf);
+        assertThat(translators.size()).isEqualTo(2);
+        assertThat(translators.remove(DayOfWeek.class)).isNotNull();
+        assertThat(translators.containsKey(DayOfWeek.class)).isFalse();
+        assertThat(translators.containsKey(Month.class)).isTrue();
+        assertThat(translators.size()).isEqualTo(1);
+        Map<Class<?>, Object> entries = new HashMap<>();
+        translators.forEach(
+                new EnumTranslators.Visitor() {
+                    @Override
+                    public <T extends Enum<?>> void visit(
+                            Class<T> key, Function<String, T> value) {
+                        entries.put(key, value);
+                    }
+                });
+        assertThat(entries).hasSize(1);
+        assertThat(entries).containsEntry(Month.class, monthTranslator);
+        translators.put(DayOfWeek.class, DayOfWeek::valueOf);
+        assertThat(translators.size()).isEqualTo(2);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static WeakReference<ClassLoader> putPluginTranslator(EnumTranslators translators)
+            throws Exception {
+        ClassLoader classLoader = new PluginClassLoader();
+        Class type = classLoader.loadClass(PluginEnum.class.getName());
+        assertThat(type).isNotSameAs(PluginEnum.class);
+        // The translator references the class loader through the enum type.
+        translators.put(type, s -> Enum.valueOf(type, (String) s));
+        return new WeakReference<>(classLoader);
+    }
+
+    @Test
+    public void testClassLoaderCollected() throws Exception {
+        EnumTranslators translators = new EnumTranslators();
+        translators.put(Month.class, Month::valueOf);
+        WeakReference<ClassLoader> classLoaderRef = putPluginTranslator(translators);
+        assertThat(translators.size()).isEqualTo(2);
+        for (int i = 0; i < 100 && classLoaderRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(classLoaderRef.get()).isNull();
+        assertThat(translators.size()).isEqualTo(1);
+        assertThat(translators.get(Month.class)).isNotNull();
+    }
+}
@@ -0,0 +1,77 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.Serializable;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+public class FormattersTest {
+    private static final Function<Object, String> OBJECT = o -> "object";
+    private static final Function<Number, String> NUMBER = n -> "number";
+    private static final Function<Integer, String> INTEGER = i -> "integer";
+    private static final Function<CharSequence, String> CHAR_SEQUENCE = s -> "chars";
+
+    @Test
+    public void testResolve() {
+        Formatters formatters = new Formatters();
+        formatters.put(Number.class, NUMBER);
+        formatters.put(Integer.class, INTEGER);
+        formatters.put(CharSequence.class, CHAR_SEQUENCE);
+        assertThat(formatters.resolve(Integer.class)).isSameAs(INTEGER);
+        assertThat(formatters.resolve(Long.class)).isSameAs(NUMBER);
+        assertThat(formatters.resolve(String.class)).isSameAs(CHAR_SEQUENCE);
+        assertThat(formatters.resolve(Thread.class)).isNull();
+        assertThat(formatters.get(Long.class)).isNull();
+        assertThat(formatters.containsKey(Long.class)).isFalse();
+        assertThat(formatters.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testSuperclassBeforeInterfaces() {
+        Formatters formatters = new Formatters();
+        formatters.put(Serializable.class, s -> "serializable");
+        formatters.put(Number.class, NUMBER);
+        // Long extends Number and Number implements Serializable
+        assertThat(formatters.resolve(Long.class)).isSameAs(NUMBER);
+        formatters.put(Object.class, OBJECT);
+        // String extends Object and implements Serializable
+        assertThat(formatters.resolve(String.class)).isSameAs(OBJECT);
+    }
+
+    @Test
+    public void testInvalidation() {
+        Formatters formatters = new Formatters();
+        formatters.put(Number.class, NUMBER);
+        assertThat(formatters.resolve(Long.class)).isSameAs(NUMBER);
+        Function<Long, String> longFormatter = l -> "long";
+        formatters.put(Long.class, longFormatter);
+        assertThat(formatters.resolve(Long.class)).isSameAs(longFormatter);
+        assertThat(formatters.resolve(Short.class)).isSameAs(NUMBER);
+        formatters.remove(Number.class);
+        assertThat(formatters.resolve(Short.class)).isNull();
+        formatters.put(Object.class, OBJECT);
+        assertThat(formatters.resolve(Short.class)).isSameAs(OBJECT);
+        assertThat(formatters.resolve(Long.class)).isSameAs(longFormatter);
+    }
+}
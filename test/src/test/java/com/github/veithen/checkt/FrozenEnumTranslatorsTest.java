@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.DayOfWeek;
+import java.time.Month;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+public class FrozenEnumTranslatorsTest {
+    @Test
+    public void testBuildAndGet() {
+        Function<String, Month> monthTranslator = Month::valueOf;
+        Function<String, DayOfWeek> dayOfWeekTranslator = DayOfWeek::valueOf;
+        FrozenEnumTranslators translators =
+                FrozenEnumTranslators.builder()
+                        .add(new FrozenEnumTranslatorMapping<>(Month.class, monthTranslator))
+                        .addAll(
+                                Arrays.asList(
+                                        new FrozenEnumTranslatorMapping<>(
+                                                DayOfWeek.class, dayOfWeekTranslator)))
+                        .build();
+        assertThat(translators.get(Month.class)).isSameAs(monthTranslator);
+        assertThat(translators.get(DayOfWeek.class)).isSameAs(dayOfWeekTranslator);
+        assertThat(translators.get(ChronoUnit.class)).isNull();
+        assertThat(translators.get(TimeUnit.class)).isNull();
+    }
+
+    @Test
+    public void testEmpty() {
+        FrozenEnumTranslators translators = FrozenEnumTranslators.builder().build();
+        assertThat(translators.get(Month.class)).isNull();
+    }
+
+    @Test
+    public void testDuplicateKey() {
+        FrozenEnumTranslators.Builder builder =
+                FrozenEnumTranslators.builder()
+                        .add(new FrozenEnumTranslatorMapping<>(Month.class, Month::valueOf))
+                        .add(new FrozenEnumTranslatorMapping<>(Month.class, Month::valueOf));
+        assertThatThrownBy(builder::build).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testSizeAndForEach() {
+        Function<String, Month> monthTranslator = Month::valueOf;
+        FrozenEnumTranslators translators =
+                FrozenEnumTranslators.builder()
+                        .add(new FrozenEnumTranslatorMapping<>(Month.class, monthTranslator))
+                        .build();
+        assertThat(translators.size()).isEqualTo(1);
+        assertThat(translators.containsKey(Month.class)).isTrue();
+        assertThat(translators.containsKey(DayOfWeek.class)).isFalse();
+        Map<Class<?>, Object> entries = new HashMap<>();
+        translators.forEach(
+                new FrozenEnumTranslators.Visitor() {
+                    @Override
+                    public <T extends Enum<?>> void visit(
+                            Class<T> key, Function<String, T> value) {
+                        entries.put(key, value);
+                    }
+                });
+        assertThat(entries).hasSize(1);
+        assertThat(entries).containsEntry(Month.class, monthTranslator);
+    }
+}
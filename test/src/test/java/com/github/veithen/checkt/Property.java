@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+public final class Property<T> {
+    private final String name;
+    private final Class<T> type;
+    private final int hashCode;
+
+    public Property(String name, Class<T> type) {
+        this.name = name;
+        this.type = type;
+        hashCode = 31 * name.hashCode() + type.hashCode();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Property)) {
+            return false;
+        }
+        Property<?> other = (Property<?>) obj;
+        return other.hashCode == hashCode && other.name.equals(name) && other.type == type;
+    }
+
+    @Override
+    public String toString() {
+        return name + ":" + type.getName();
+    }
+}
@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class PropertyValuesTest {
+    @Test
+    public void testLookupWithEqualKey() {
+        PropertyValues values = new PropertyValues();
+        values.put(new Property<>("name", String.class), "foo");
+        assertThat(values.get(new Property<>("name", String.class))).isEqualTo("foo");
+        assertThat(values.get(new Property<>("name", Object.class))).isNull();
+        assertThat(values.containsKey(new Property<>("other", String.class))).isFalse();
+        assertThat(values.put(new Property<>("name", String.class), "bar")).isEqualTo("foo");
+        assertThat(values.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testHashCollision() {
+        // "Aa" and "BB" have the same hash code
+        PropertyValues values = new PropertyValues();
+        values.put(new Property<>("Aa", String.class), "foo");
+        values.put(new Property<>("BB", String.class), "bar");
+        assertThat(values.get(new Property<>("Aa", String.class))).isEqualTo("foo");
+        assertThat(values.get(new Property<>("BB", String.class))).isEqualTo("bar");
+        assertThat(values.remove(new Property<>("Aa", String.class))).isEqualTo("foo");
+        assertThat(values.get(new Property<>("BB", String.class))).isEqualTo("bar");
+    }
+
+    @Test
+    public void testForEach() {
+        PropertyValues values = new PropertyValues();
+        values.put(new Property<>("name", String.class), "foo");
+        values.put(new Property<>("count", Integer.class), 42);
+        Map<Object, Object> entries = new HashMap<>();
+        values.forEach(
+                new PropertyValues.Visitor() {
+                    @Override
+                    public <T> void visit(Property<T> key, T value) {
+                        entries.put(key, value);
+                    }
+                });
+        assertThat(entries).hasSize(2);
+        assertThat(entries).containsEntry(new Property<>("name", String.class), "foo");
+        assertThat(entries).containsEntry(new Property<>("count", Integer.class), 42);
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        PropertyValues values = new PropertyValues();
+        Map<Property<Integer>, Integer> expected = new HashMap<>();
+        Random random = new Random(1234);
+        for (int i = 0; i < 10000; i++) {
+            // Create a new instance every time so that keys are never identical
+            Property<Integer> property = new Property<>("p" + random.nextInt(50), Integer.class);
+            if (random.nextBoolean()) {
+                assertThat(values.put(property, i)).isEqualTo(expected.put(property, i));
+            } else {
+                assertThat(values.remove(property)).isEqualTo(expected.remove(property));
+            }
+            assertThat(values.size()).isEqualTo(expected.size());
+            assertThat(values.containsKey(property)).isEqualTo(expected.containsKey(property));
+        }
+    }
+}
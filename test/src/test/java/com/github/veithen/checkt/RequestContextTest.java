@@ -0,0 +1,114 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class RequestContextTest {
+    private static final Descriptor<String> USER = new Descriptor<>(String.class);
+    private static final Descriptor<Integer> ATTEMPT = new Descriptor<>(Integer.class);
+    private static final Descriptor<Boolean> TRACED = new Descriptor<>(Boolean.class);
+
+    @Test
+    public void testWithLeavesOriginalUnchanged() {
+        RequestContext empty = RequestContext.empty();
+        RequestContext context = empty.with(USER, "alice").with(ATTEMPT, 1);
+        assertThat(context.get(USER)).isEqualTo("alice");
+        assertThat(context.get(ATTEMPT)).isEqualTo(1);
+        assertThat(context.size()).isEqualTo(2);
+        assertThat(empty.get(USER)).isNull();
+        assertThat(empty.size()).isEqualTo(0);
+        RequestContext replaced = context.with(USER, "bob");
+        assertThat(replaced.get(USER)).isEqualTo("bob");
+        assertThat(replaced.get(ATTEMPT)).isEqualTo(1);
+        assertThat(replaced.size()).isEqualTo(2);
+        assertThat(context.get(USER)).isEqualTo("alice");
+    }
+
+    @Test
+    public void testWithout() {
+        RequestContext context =
+                RequestContext.empty().with(USER, "alice").with(ATTEMPT, 1).with(TRACED, true);
+        RequestContext removed = context.without(ATTEMPT);
+        assertThat(removed.containsKey(ATTEMPT)).isFalse();
+        assertThat(removed.get(USER)).isEqualTo("alice");
+        assertThat(removed.get(TRACED)).isEqualTo(true);
+        assertThat(removed.size()).isEqualTo(2);
+        assertThat(context.get(ATTEMPT)).isEqualTo(1);
+        assertThat(removed.without(ATTEMPT)).isSameAs(removed);
+        assertThat(context.with(ATTEMPT, null).size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testForEach() {
+        RequestContext context = RequestContext.empty().with(USER, "alice").with(ATTEMPT, 1);
+        Map<Object, Object> entries = new HashMap<>();
+        context.with(USER, "bob")
+                .forEach(
+                        new RequestContext.Visitor() {
+                            @Override
+                            public <T> void visit(Descriptor<T> key, T value) {
+                                entries.put(key, value);
+                            }
+                        });
+        assertThat(entries).hasSize(2);
+        assertThat(entries).containsEntry(USER, "bob");
+        assertThat(entries).containsEntry(ATTEMPT, 1);
+    }
+
+    @Test
+    public void testBinding() {
+        assertThat(RequestContext.current()).isSameAs(RequestContext.empty());
+        RequestContext outer = RequestContext.empty().with(USER, "alice");
+        RequestContext inner = outer.with(ATTEMPT, 2);
+        outer.run(
+                () -> {
+                    assertThat(RequestContext.current()).isSameAs(outer);
+                    assertThat(inner.call(() -> RequestContext.current().get(ATTEMPT)))
+                            .isEqualTo(2);
+                    assertThat(RequestContext.current()).isSameAs(outer);
+                });
+        assertThat(RequestContext.current()).isSameAs(RequestContext.empty());
+    }
+
+    @Test
+    public void testBindingIsPerThread() {
+        AtomicReference<RequestContext> seen = new AtomicReference<>();
+        RequestContext.empty()
+                .with(USER, "alice")
+                .run(
+                        () -> {
+                            Thread thread = new Thread(() -> seen.set(RequestContext.current()));
+                            thread.start();
+                            try {
+                                thread.join();
+                            } catch (InterruptedException ex) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+        assertThat(seen.get()).isSameAs(RequestContext.empty());
+    }
+}
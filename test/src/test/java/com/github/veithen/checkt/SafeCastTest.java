@@ -20,7 +20,16 @@
 package com.github.veithen.checkt;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 
 public class SafeCastTest {
@@ -37,4 +46,132 @@ public class SafeCastTest {
         SomeClass<String, Integer> ref2 = SafeCast.cast(ref1, String.class);
         assertThat(ref2).isSameAs(ref1);
     }
+
+    @Test
+    public void testCastInterface() {
+        Attribute<String> attribute = () -> String.class;
+        Attribute<?> ref1 = attribute;
+        Attribute<String> ref2 = SafeCast.cast(ref1, String.class);
+        assertThat(ref2).isSameAs(ref1);
+        assertThat(SafeCast.tryCast(ref1, Integer.class)).isNull();
+    }
+
+    @Test
+    public void testCastMismatch() {
+        Relation<?, ?> ref = new Relation<String, Integer>(String.class, Integer.class);
+        assertThatThrownBy(() -> SafeCast.cast(ref, String.class, String.class))
+                .isInstanceOf(ClassCastException.class);
+        assertThatThrownBy(() -> SafeCast.castByType2(ref, null))
+                .isInstanceOf(ClassCastException.class);
+    }
+
+    @Test
+    public void testTryCast() {
+        Relation<?, ?> ref1 = new Relation<String, Integer>(String.class, Integer.class);
+        Relation<String, Integer> ref2 = SafeCast.tryCast(ref1, String.class, Integer.class);
+        assertThat(ref2).isSameAs(ref1);
+        assertThat(SafeCast.tryCast(ref1, String.class, String.class)).isNull();
+        assertThat(SafeCast.tryCastByType1(ref1, Integer.class)).isNull();
+        assertThat(SafeCast.tryCastByType1(ref1, null)).isNull();
+    }
+
+    @Test
+    public void testIsCastable() {
+        Relation<?, ?> ref = new Relation<String, Integer>(String.class, Integer.class);
+        assertThat(SafeCast.isCastable(ref, String.class, Integer.class)).isTrue();
+        assertThat(SafeCast.isCastable(ref, Integer.class, Integer.class)).isFalse();
+        assertThat(SafeCast.isCastableByType2(ref, Integer.class)).isTrue();
+        assertThat(SafeCast.isCastableByType2(ref, null)).isFalse();
+    }
+
+    @Test
+    public void testTryCastAndIsCastableWithNull() {
+        Relation<?, ?> ref = null;
+        assertThat(SafeCast.tryCast(ref, String.class, Integer.class)).isNull();
+        assertThat(SafeCast.tryCastByType1(ref, String.class)).isNull();
+        assertThat(SafeCast.isCastable(ref, String.class, Integer.class)).isFalse();
+        assertThat(SafeCast.isCastableByType2(ref, Integer.class)).isFalse();
+        Attribute<?> attribute = null;
+        assertThat(SafeCast.tryCast(attribute, String.class)).isNull();
+        assertThat(SafeCast.isCastable(attribute, String.class)).isFalse();
+    }
+
+    @Test
+    public void testCastAllList() {
+        Relation<String, Integer> r1 = new Relation<>(String.class, Integer.class);
+        Relation<String, Long> r2 = new Relation<>(String.class, Long.class);
+        List<Relation<?, ?>> list = new ArrayList<>(Arrays.asList(r1, r2));
+        List<Relation<String, ?>> view = SafeCast.castAllRelationByType1(list, String.class);
+        assertThat(view).containsExactly(r1, r2);
+        list.add(new Relation<>(Integer.class, Integer.class));
+        assertThat(view).hasSize(3);
+        assertThatThrownBy(() -> view.get(2)).isInstanceOf(ClassCastException.class);
+    }
+
+    @Test
+    public void testCastAllIterable() {
+        Relation<String, Integer> r1 = new Relation<>(String.class, Integer.class);
+        Iterable<Relation<?, ?>> iterable = Collections.singleton(r1);
+        Iterable<Relation<String, Integer>> view =
+                SafeCast.castAllRelation(iterable, String.class, Integer.class);
+        assertThat(view).containsExactly(r1);
+        Iterator<Relation<Integer, Integer>> it =
+                SafeCast.castAllRelation(iterable, Integer.class, Integer.class).iterator();
+        assertThatThrownBy(it::next).isInstanceOf(ClassCastException.class);
+    }
+
+    @Test
+    public void testFilter() {
+        Relation<String, Integer> r1 = new Relation<>(String.class, Integer.class);
+        Relation<Long, Integer> r2 = new Relation<>(Long.class, Integer.class);
+        Relation<String, Long> r3 = new Relation<>(String.class, Long.class);
+        Stream<Relation<?, ?>> stream = Stream.of(r1, r2, r3);
+        List<Relation<String, ?>> result =
+                SafeCast.filterRelationByType1(stream, String.class).collect(Collectors.toList());
+        assertThat(result).containsExactly(r1, r3);
+    }
+
+    @Test
+    public void testCaster() {
+        Relation<String, Integer> r1 = new Relation<>(String.class, Integer.class);
+        Relation<Long, Integer> r2 = new Relation<>(Long.class, Integer.class);
+        SafeCast.Caster<Relation<?, ?>, Relation<String, Integer>> caster =
+                SafeCast.relationCaster(String.class, Integer.class);
+        assertThat(caster.test(r1)).isTrue();
+        assertThat(caster.test(r2)).isFalse();
+        assertThat(caster.apply(r1)).isSameAs(r1);
+        assertThatThrownBy(() -> caster.apply(r2)).isInstanceOf(ClassCastException.class);
+    }
+
+    @Test
+    public void testCasterWithEqualTokens() {
+        TypeName<String> name1 = new TypeName<>("string");
+        TypeName<String> name2 = new TypeName<>("string");
+        Tagged<?> tagged1 = new Tagged<>(name1);
+        Tagged<?> tagged2 = new Tagged<>(name2);
+        SafeCast.Caster<Tagged<?>, Tagged<String>> caster1 = SafeCast.taggedCaster(name1);
+        SafeCast.Caster<Tagged<?>, Tagged<String>> caster2 = SafeCast.taggedCaster(name2);
+        assertThat(caster1.test(tagged1)).isTrue();
+        assertThat(caster1.test(tagged2)).isFalse();
+        assertThat(caster2.test(tagged2)).isTrue();
+        assertThat(caster2.test(tagged1)).isFalse();
+    }
+
+    @Test
+    public void testCasterInStream() {
+        Relation<String, Integer> r1 = new Relation<>(String.class, Integer.class);
+        Relation<Long, Integer> r2 = new Relation<>(Long.class, Integer.class);
+        Relation<String, Long> r3 = new Relation<>(String.class, Long.class);
+        SafeCast.Caster<Relation<?, ?>, Relation<String, ?>> caster =
+                SafeCast.relationCasterByType1(String.class);
+        assertThat(SafeCast.relationCasterByType1(String.class)).isSameAs(caster);
+        assertThat(SafeCast.relationCasterByType2(Integer.class)).isNotSameAs(caster);
+        List<Relation<String, ?>> result =
+                Stream.of(r1, r2, r3).filter(caster).map(caster).collect(Collectors.toList());
+        assertThat(result).containsExactly(r1, r3);
+        Map<Boolean, List<Relation<?, ?>>> groups =
+                Stream.<Relation<?, ?>>of(r1, r2, r3)
+                        .collect(Collectors.groupingBy(caster::test));
+        assertThat(groups.get(true)).containsExactly(r1, r3);
+    }
 }
@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * Checkt
+ * %%
+ * Copyright (C) 2020 - 2022 Andreas Veithen
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package com.github.veithen.checkt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class WeakDescriptorValuesTest {
+    @Test
+    public void testPutAndGet() {
+        WeakDescriptorValues values = new WeakDescriptorValues();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor2 = new Descriptor<>(String.class);
+        assertThat(values.put(descriptor1, "foo")).isNull();
+        assertThat(values.get(descriptor1)).isEqualTo("foo");
+        assertThat(values.get(descriptor2)).isNull();
+        assertThat(values.put(descriptor1, "bar")).isEqualTo("foo");
+        assertThat(values.get(descriptor1)).isEqualTo("bar");
+    }
+
+    @Test
+    public void testGrowBeyondExpectedSize() {
+        WeakDescriptorValues values = new WeakDescriptorValues();
+        List<Descriptor<Integer>> descriptors = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Descriptor<Integer> descriptor = new Descriptor<>(Integer.class);
+            descriptors.add(descriptor);
+            values.put(descriptor, i);
+        }
+        for (int i = 0; i < descriptors.size(); i++) {
+            assertThat(values.get(descriptors.get(i))).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void testNullKey() {
+        WeakDescriptorValues values = new WeakDescriptorValues();
+        Object value = values.get(null);
+        assertThat(value).isNull();
+        assertThatThrownBy(() -> values.put(null, "foo")).isInstanceOf(NullPointerException.class);
+    }
+
+    @Test
+    public void testEntryRemovedAfterKeyCollected() throws Exception {
+        WeakDescriptorValues values = new WeakDescriptorValues();
+        Descriptor<String> descriptor = new Descriptor<>(String.class);
+        String value = new String("foo");
+        WeakReference<String> valueRef = new WeakReference<>(value);
+        values.put(descriptor, value);
+        descriptor = null;
+        value = null;
+        Descriptor<String> other = new Descriptor<>(String.class);
+        for (int i = 0; i < 100 && valueRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+            // Stale entries are expunged by the next operation on the container.
+            values.get(other);
+        }
+        assertThat(valueRef.get()).isNull();
+    }
+
+    @Test
+    public void testRemoveSizeAndForEach() {
+        WeakDescriptorValues values = new WeakDescriptorValues();
+        Descriptor<String> descriptor1 = new Descriptor<>(String.class);
+        Descriptor<String> descriptor2 = new Descriptor<>(String.class);
+        values.put(descriptor1, "foo");
+        values.put(descriptor2, "bar");
+        assertThat(values.size()).isEqualTo(2);
+        assertThat(values.remove(descriptor1)).isEqualTo("foo");
+        assertThat(values.remove(descriptor1)).isNull();
+        assertThat(values.containsKey(descriptor1)).isFalse();
+        assertThat(values.size()).isEqualTo(1);
+        Map<Object, Object> entries = new IdentityHashMap<>();
+        values.forEach(
+                new WeakDescriptorValues.Visitor() {
+                    @Override
+                    public <T> void visit(Descriptor<T> key, T value) {
+                        entries.put(key, value);
+                    }
+                });
+        assertThat(entries).hasSize(1);
+        assertThat(entries).containsEntry(descriptor2, "bar");
+    }
+}